@@ -1,22 +1,19 @@
 import java.awt.Dimension;
 import java.awt.Toolkit;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.io.File;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.security.auth.login.LoginException;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPopupMenu;
-import javax.swing.JTable;
 import javax.swing.SwingUtilities;
 
 import com.healthmarketscience.jackcess.*;
@@ -38,10 +35,20 @@ import com.healthmarketscience.jackcess.*;
 
 public class AccessController {
 	
-	private Database db;
+	private final DatabaseSession session = new DatabaseSession();
 	private Table patientsTable;
 	private String filePath = null;
 	private String accessPath = null;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private PatientWriter.Mode writeMode = PatientWriter.Mode.SKIP;
+	private PatientKeyIndex keyIndex;
+	private long keyIndexGeneration;
+	private FileLedger ledger = new FileLedger(FileLedger.defaultFile());
+	private PatientReport cachedReport;
+	private long cachedGeneration;
+	private final AuthorizationCache authorizations = new AuthorizationCache();
+	
+	private static final int DEFAULT_BATCH_SIZE = 500;
 	
 	/**
 	 * Singleton Wrapper class 
@@ -71,7 +78,7 @@ public class AccessController {
 	 */
 	public void openDatabase(String filePath){
 		try {
-			db = DatabaseBuilder.open(new File(filePath));
+			connect(filePath);
 		} catch (IOException e) {
 			JOptionPane.showMessageDialog(null, "Could not open database.");
 		}
@@ -82,12 +89,41 @@ public class AccessController {
 	 */
 	public void closeDatabase(){
 		try {
-			db.close();
+			disconnect();
 		} catch (IOException e) {
 			JOptionPane.showMessageDialog(null, "Could not properly close database.");
 		}
 	}
 	
+	/**
+	 * Establishes a connection with the database without any user interaction.
+	 * The database is kept open in a {@link DatabaseSession} between actions and
+	 * is only reopened if a different file is chosen or the file was changed by
+	 * something else. Failures are left to the caller to report.
+	 * @param filePath - the file path to the MS Access database
+	 * @throws IOException
+	 */
+	public void connect(String filePath) throws IOException{
+		session.open(filePath);
+	}
+	
+	/**
+	 * Ends a unit of work without any user interaction. Changes are flushed to
+	 * disk but the database stays open for the next action.
+	 * @throws IOException
+	 */
+	public void disconnect() throws IOException{
+		session.flush();
+	}
+	
+	/**
+	 * Flushes and fully closes the database, dropping every cached table handle.
+	 * @throws IOException
+	 */
+	public void closeSession() throws IOException{
+		session.close();
+	}
+	
 	public void setFilePath(){
 		JOptionPane.showMessageDialog(null, "Please select the default file path to open to.");
 		FileChooser fc = new FileChooser();
@@ -114,54 +150,204 @@ public class AccessController {
 		}
 	}
 	
+	/**
+	 * Checks that the user is a GGH Admin. A successful check is remembered
+	 * for a few minutes so repeated elevations in one sitting stay local; a
+	 * failed one forgets anything remembered for the user.
+	 * @param username - the domain account name
+	 * @param password - the account password
+	 * @return true if the user is a member of GGH Admins
+	 */
 	public boolean verifyPassword(String username, String password){
-		boolean authResult = false;
-		MemberOfAuth auth = new MemberOfAuth("FLH.LOCAL");
-		authResult = auth.isMemberOf("GGH Admins", username, password);
+		if(authorizations.isAuthorized("GGH Admins", username, password)){
+			return true;
+		}
+		MemberOfAuth auth = MemberOfAuth.getInstance("FLH.LOCAL");
+		boolean authResult = auth.isMemberOf("GGH Admins", username, password);
+		if(authResult){
+			authorizations.authorized("GGH Admins", username, password);
+		}else{
+			authorizations.invalidate(username);
+		}
 		return authResult;
 	}
 	
+	/**
+	 * Forgets every remembered elevation so the next one goes to the directory.
+	 */
+	public void clearAuthorizations(){
+		authorizations.clear();
+	}
+	
 	/**
 	 * Writes data to the access database based on the processed NICS files. Data includes
 	 * Patient Name, Meditech ID, Acknowledged Boolean State, and Initial/Update status.
-	 * Uses Jackcess library to interact with the MS Access database.
+	 * Uses Jackcess library to interact with the MS Access database. Rows are added in
+	 * batches of {@link #getBatchSize()} and every row in a batch shares one timestamp.
+	 * Records already in the table are handled according to {@link #getWriteMode()}.
 	 * 
 	 * @param nicsData - the process nics data in 3 modulo form
 	 */
 	public void writeData(ArrayList<String> nicsData){
 		try {
-			patientsTable = db.getTable("Patients");
+			insertNics(nicsData);
 		}catch(IOException e){
-			JOptionPane.showMessageDialog(null, "Could not find or open table.");
+			JOptionPane.showMessageDialog(null, "Could not add rows to the Patients Table.");
 		}
-		for(int i = 0; i < nicsData.size(); i++){
-			if(i%3 == 0){
-				try{
-					DateFormat dateFormat = new SimpleDateFormat();
-					Date date = new Date();
-					patientsTable.addRow(Column.AUTO_NUMBER, nicsData.get(i+1), nicsData.get(i), "", nicsData.get(i+2), dateFormat.format(date));
-				}catch(IOException e){
-					JOptionPane.showMessageDialog(null, "Could not add a row to the Patients Table.");
-				}
+	}
+	
+	/**
+	 * Does the work of {@link #writeData(ArrayList)} without any user interaction.
+	 * 
+	 * @param nicsData - the process nics data in 3 modulo form
+	 * @return counts of inserted, updated and skipped records
+	 * @throws IOException if the table cannot be opened or a batch cannot be written
+	 */
+	public PatientWriter.Result insertNics(ArrayList<String> nicsData) throws IOException{
+		return insertNics(nicsData, ProgressListener.NONE);
+	}
+	
+	/**
+	 * Does the work of {@link #writeData(ArrayList)} without any user interaction,
+	 * reporting progress after each batch. If cancellation is requested no further
+	 * batches are started and the batches already written are kept.
+	 * 
+	 * The Meditech ID and code pairs in the table are read once per session and
+	 * kept up to date as rows are written, so repeats are found without a query.
+	 * 
+	 * @param nicsData - the process nics data in 3 modulo form
+	 * @param listener - receives progress and may request cancellation
+	 * @return counts of inserted, updated and skipped records
+	 * @throws IOException if the table cannot be opened or a batch cannot be written
+	 */
+	public PatientWriter.Result insertNics(ArrayList<String> nicsData, ProgressListener listener) throws IOException{
+		patientsTable = session.table("Patients");
+		if(keyIndex != null && keyIndexGeneration != session.getGeneration()){
+			// reopened or changed since the keys were read
+			keyIndex = null;
+		}
+		if(keyIndex == null && writeMode != PatientWriter.Mode.APPEND){
+			listener.progress("Reading existing rows", 0, 0);
+			PatientsScanEvent event = new PatientsScanEvent();
+			event.begin();
+			keyIndex = PatientKeyIndex.load(patientsTable);
+			if(event.shouldCommit()){
+				event.purpose = "Key index";
+				event.rowsScanned = patientsTable.getRowCount();
+				event.commit();
+			}
+		}
+		session.markModified();
+		boolean written = false;
+		try{
+			PatientWriter writer = new PatientWriter(patientsTable, session.index("Patients", "Meditech_ID"), keyIndex);
+			PatientWriter.Result result = writer.write(nicsData, writeMode, batchSize, listener);
+			written = true;
+			return result;
+		}finally{
+			if(written){
+				keyIndexGeneration = session.getGeneration();
+			}else{
+				// a failed batch may be partly in the table, so read the keys again next time
+				keyIndex = null;
 			}
 		}
 	}
 	
-	public void writeResolvedNack(int rowID){
-		try{
-			patientsTable = db.getTable("Patients");
-		}catch(IOException e){
-			JOptionPane.showMessageDialog(null, "Could not find or open table.");
+	/**
+	 * Sets what {@link #writeData(ArrayList)} does with a record whose Meditech ID
+	 * and code are already in the Patients table. The default is to skip it.
+	 * @param writeMode - append, skip or update
+	 */
+	public void setWriteMode(PatientWriter.Mode writeMode){
+		this.writeMode = writeMode;
+	}
+	
+	public PatientWriter.Mode getWriteMode(){
+		return writeMode;
+	}
+	
+	/**
+	 * Sets how many Patients rows are grouped into each insert by {@link #writeData(ArrayList)}.
+	 * @param batchSize - rows per batch, must be at least 1
+	 */
+	public void setBatchSize(int batchSize){
+		if(batchSize < 1){
+			throw new IllegalArgumentException("Batch size must be at least 1");
 		}
-		IndexCursor cursor;
-		try{
-			cursor = CursorBuilder.createCursor(patientsTable.getIndex("Patient_ID"));
-			for(Row row : cursor.newEntryIterable(rowID)){
-				System.out.println(cursor.getCurrentRowValue(patientsTable.getColumn("Patient_ID")));
-			    //cursor.setCurrentRowValue(patientsTable.getColumn("Resolved"), new String("Yes"));
+		this.batchSize = batchSize;
+	}
+	
+	public int getBatchSize(){
+		return batchSize;
+	}
+	
+	/**
+	 * Marks a non-acknowledged patient as resolved. The row is written in the
+	 * background through the database session, like every other change to the
+	 * Patients table, so it never runs alongside another task's writes. The
+	 * caller must have checked the user's elevation first.
+	 * 
+	 * @param databasePath - the database the report was read from
+	 * @param patientId - the Patient_ID of the row to resolve
+	 * @param onResolved - run on the event dispatch thread once the row is written
+	 */
+	public void writeResolvedNack(final String databasePath, final int patientId, final Runnable onResolved){
+		if(BackgroundTask.isRunning()){
+			JOptionPane.showMessageDialog(null, "Another operation is still running. Please wait for it to finish.");
+			return;
+		}
+		new BackgroundTask<Boolean>("Resolving NACK", "Could not write to the Patients Table."){
+			@Override
+			protected Boolean work() throws Exception{
+				connect(databasePath);
+				try{
+					return Boolean.valueOf(markResolved(patientId));
+				}finally{
+					disconnect();
+				}
 			}
-		}catch(IOException e){
-		}                        
+			
+			@Override
+			protected void finished(Boolean found, boolean cancelled){
+				if(cancelled){
+					return;
+				}
+				if(found != null && found.booleanValue()){
+					JOptionPane.showMessageDialog(null, "NACK resolved.");
+					onResolved.run();
+				}else{
+					JOptionPane.showMessageDialog(null, "That patient is no longer in the Patients Table.");
+				}
+			}
+		}.start();
+	}
+	
+	/**
+	 * Sets Resolved to Yes on the row with the given Patient_ID.
+	 * @return true if the row was found
+	 * @throws IOException
+	 */
+	private boolean markResolved(int patientId) throws IOException{
+		patientsTable = session.table("Patients");
+		session.markModified();
+		Column resolvedCol = patientsTable.getColumn("Resolved");
+		Index idIndex = session.index("Patients", "Patient_ID");
+		boolean found = false;
+		if(idIndex != null){
+			IndexCursor cursor = CursorBuilder.createCursor(idIndex);
+			for(Row row : cursor.newEntryIterable(Integer.valueOf(patientId))){
+				cursor.setCurrentRowValue(resolvedCol, "Yes");
+				found = true;
+			}
+		}else{
+			Cursor cursor = CursorBuilder.createCursor(patientsTable);
+			if(cursor.findFirstRow(patientsTable.getColumn("Patient_ID"), Integer.valueOf(patientId))){
+				cursor.setCurrentRowValue(resolvedCol, "Yes");
+				found = true;
+			}
+		}
+		return found;
 	}
 	
 	/**
@@ -171,51 +357,211 @@ public class AccessController {
 	 * -acknowledged records will be left and previously acknowledged files will not be
 	 * touched.
 	 * 
+	 * The ACK IDs are indexed once by an {@link AckReconciler} so the table is
+	 * only scanned a single time.
+	 * 
 	 * @param ackData - List of acknowledgements to cross check against the database
+	 * @return counts of newly acknowledged, already acknowledged and unmatched rows
 	 */
-	public void setAcknowledgements(ArrayList<String> ackData){
+	public AckReconciler.Result setAcknowledgements(ArrayList<String> ackData){
 		try{
-			patientsTable = db.getTable("Patients");
-			Cursor cur = CursorBuilder.createCursor(patientsTable);
-			while(cur.moveToNextRow()){
-				for(int i = 0; i < ackData.size(); i++){
-					if(cur.getCurrentRowValue(patientsTable.getColumn("Meditech_ID")).toString().contains(ackData.get(i))){
-						cur.setCurrentRowValue(patientsTable.getColumn("Acknowledged"), "Yes");
-					}
-				}
-			}
+			return reconcileAcks(ackData);
 		}catch(IOException e){
 			JOptionPane.showMessageDialog(null, "Could not read from the Patients Table.");
 		}
+		return null;
 	}
 	
 	/**
-	 * Method handles the logic for gathering NICS data and writing it to a MS access
-	 * database.
+	 * Does the work of {@link #setAcknowledgements(ArrayList)} without any user interaction.
 	 * 
+	 * @param ackData - List of acknowledgements to cross check against the database
+	 * @return counts of newly acknowledged, already acknowledged and unmatched rows
 	 * @throws IOException
 	 */
-	public void processNics() throws IOException{
-		JOptionPane.showMessageDialog(null, "Please select the NICS files you would like to process.\nYou can select multiple files by holding down the 'CTRL' key while you select.");
-		FileReader fr = new FileReader();
-		FileChooser fc;
-		if(filePath != null){
-			fc = new FileChooser(filePath);
-		}else{
-			fc = new FileChooser();
+	public AckReconciler.Result reconcileAcks(ArrayList<String> ackData) throws IOException{
+		return reconcileAcks(ackData, ProgressListener.NONE);
+	}
+	
+	/**
+	 * Does the work of {@link #setAcknowledgements(ArrayList)} without any user
+	 * interaction, reporting progress as rows are scanned.
+	 * 
+	 * @param ackData - List of acknowledgements to cross check against the database
+	 * @param listener - receives progress and may request cancellation
+	 * @return counts of newly acknowledged, already acknowledged and unmatched rows
+	 * @throws IOException
+	 */
+	public AckReconciler.Result reconcileAcks(ArrayList<String> ackData, ProgressListener listener) throws IOException{
+		patientsTable = session.table("Patients");
+		session.markModified();
+		PatientsScanEvent event = new PatientsScanEvent();
+		event.begin();
+		AckReconciler.Result result = new AckReconciler(ackData).reconcile(patientsTable, listener);
+		if(event.shouldCommit()){
+			event.purpose = "ACK reconciliation";
+			event.rowsScanned = result.getRowsScanned();
+			event.rowsMatched = result.getNewlyAcknowledged() + result.getAlreadyAcknowledged();
+			event.rowsUpdated = result.getNewlyAcknowledged();
+			event.commit();
 		}
-		String[] filePaths = fc.getFilePaths();
-		if(filePaths[0].equalsIgnoreCase("No Selection")){
-			return;
+		return result;
+	}
+	
+	/**
+	 * Gathers the acknowledged patients.
+	 * 
+	 * @return the report rows
+	 * @throws IOException
+	 */
+	public List<PatientRecord> getAcknowledgedReport() throws IOException{
+		return getPatientReport(ProgressListener.NONE).getAcknowledged();
+	}
+	
+	/**
+	 * Gathers the non-acknowledged, unresolved patients.
+	 * 
+	 * @return the report rows
+	 * @throws IOException
+	 */
+	public List<PatientRecord> getNonAcknowledgedReport() throws IOException{
+		return getPatientReport(ProgressListener.NONE).getUnresolved();
+	}
+	
+	/**
+	 * Classifies every Patients row with a single {@link ReportEngine} scan. The
+	 * result is kept until the database is written to or reopened, so showing
+	 * several reports back to back only reads the table once.
+	 * 
+	 * @param listener - receives progress and may request cancellation
+	 * @return the report, which is incomplete if the scan was cancelled
+	 * @throws IOException
+	 */
+	public PatientReport getPatientReport(ProgressListener listener) throws IOException{
+		long generation = session.getGeneration();
+		if(cachedReport != null && cachedGeneration == generation){
+			return cachedReport;
 		}
-		filePath = fc.getDirPath();		
-		ArrayList<String> data = fr.readFile(filePaths);
-		ArrayList<String> nics = fr.getNicsData(data);
-		if(nics.size() == 0){
-			JOptionPane.showMessageDialog(null, "No NICS information was found. Please verify the correct files were chosen."); 
-			return;
+		PatientsScanEvent event = new PatientsScanEvent();
+		event.begin();
+		PatientReport report = new ReportEngine().scan(session, listener);
+		if(event.shouldCommit()){
+			event.purpose = "Report";
+			event.rowsScanned = report.getAcknowledged().size() + report.getResolved().size() + report.getUnresolved().size();
+			event.commit();
+		}
+		if(report.isComplete()){
+			cachedReport = report;
+			cachedGeneration = generation;
+		}
+		return report;
+	}
+	
+	/**
+	 * Gives a sink for {@link ParallelIngestor#stream(String[], MessageType, ParallelIngestor.DataSink, ProgressListener)}
+	 * that writes each file's NICS data to the Patients table as soon as it is
+	 * parsed, so later files are parsed while earlier ones are written and only
+	 * a few files' data is held at once. The sink must be used on the thread
+	 * that owns the database.
+	 * 
+	 * @param total - receives the counts of every file written
+	 * @param listener - asked whether to stop between batches
+	 * @return the sink
+	 */
+	public ParallelIngestor.DataSink nicsWriter(final PatientWriter.Result total, final ProgressListener listener){
+		// per batch progress would fight with the per file progress of the stream
+		final ProgressListener cancelOnly = new ProgressListener(){
+			@Override
+			public void progress(String stage, long done, long count){
+			}
+			
+			@Override
+			public boolean isCancelRequested(){
+				return listener.isCancelRequested();
+			}
+		};
+		return new ParallelIngestor.DataSink(){
+			@Override
+			public void accept(String filePath, ArrayList<String> data) throws IOException{
+				total.add(insertNics(data, cancelOnly));
+			}
+		};
+	}
+	
+	/**
+	 * Lists the files that could not be read.
+	 */
+	private void reportFailures(ParallelIngestor.Result parsed){
+		if(!parsed.getFailures().isEmpty()){
+			JOptionPane.showMessageDialog(null, "The following files could not be read and were skipped:\n" + parsed.describeFailures());
+		}
+	}
+	
+	/**
+	 * Leaves out the selected files that the ledger says were already processed,
+	 * unless the user asks to process them again.
+	 * 
+	 * @param filePaths - the selected files
+	 * @param type - what the files are being processed as
+	 * @param databasePath - the database they are to be written to
+	 * @return the files to process, or null if there is nothing to do
+	 */
+	private String[] skipProcessed(String[] filePaths, MessageType type, String databasePath){
+		String[] unprocessed;
+		try{
+			unprocessed = ledger.unprocessed(filePaths, type, databasePath);
+		}catch(IOException e){
+			// without the ledger every file is treated as new
+			return filePaths;
+		}
+		if(unprocessed.length == filePaths.length){
+			return filePaths;
 		}
-		JOptionPane.showMessageDialog(null, "Please select the Microsoft Access Database to write information to.");
+		int done = filePaths.length - unprocessed.length;
+		int choice = JOptionPane.showConfirmDialog(null, done + " of the " + filePaths.length + " selected files have already been processed.\nWould you like to process them again?", "Already Processed", JOptionPane.YES_NO_CANCEL_OPTION);
+		if(choice == JOptionPane.YES_OPTION){
+			return filePaths;
+		}
+		if(choice != JOptionPane.NO_OPTION){
+			return null;
+		}
+		if(unprocessed.length == 0){
+			JOptionPane.showMessageDialog(null, "There are no new files to process.");
+			return null;
+		}
+		return unprocessed;
+	}
+	
+	/**
+	 * Records in the ledger that the files' data is in the database.
+	 */
+	private void recordProcessed(List<String> files, MessageType type, String databasePath){
+		try{
+			ledger.record(files, type, databasePath);
+		}catch(IOException e){
+			// the files will just be offered as new next time
+		}
+	}
+	
+	/**
+	 * Sets the ledger of processed files that NICS and ACK selections are checked against.
+	 * @param ledger - the ledger to use
+	 */
+	public void setLedger(FileLedger ledger){
+		this.ledger = ledger;
+	}
+	
+	public FileLedger getLedger(){
+		return ledger;
+	}
+	
+	/**
+	 * Asks the user for the database to use.
+	 * @param prompt - what the database will be used for
+	 * @return the selected file path, or null if nothing was selected
+	 */
+	private String chooseDatabase(String prompt){
+		JOptionPane.showMessageDialog(null, prompt);
 		FileChooser fc2;
 		if(accessPath != null){
 			fc2 = new FileChooser(accessPath);
@@ -224,25 +570,18 @@ public class AccessController {
 		}
 		String filePath = fc2.getFilePath();
 		if(filePath.equalsIgnoreCase("No File Selected")){
-			return;
+			return null;
 		}
-		accessPath = filePath;
-		AccessController ac = AccessController.getInstance();
-		ac.openDatabase(filePath);
-		ac.writeData(nics);
-		ac.closeDatabase();
-		JOptionPane.showMessageDialog(null, "Information successfully written.");
+		return filePath;
 	}
 	
 	/**
-	 * Method handles logic for gathering Ack data and cross-checking it against
-	 * a MS Access database.
-	 * 
-	 * @throws IOException
+	 * Asks the user for the NICS or ACK files to process.
+	 * @param prompt - which files to select
+	 * @return the selected file paths, or null if nothing was selected
 	 */
-	public void processAcks() throws IOException{
-		JOptionPane.showMessageDialog(null, "Please select the ACK files you would like to process.\nYou can select multiple files by holding down the 'CTRL' key while you select.");
-		FileReader fr = new FileReader();
+	private String[] chooseFiles(String prompt){
+		JOptionPane.showMessageDialog(null, prompt);
 		FileChooser fc;
 		if(filePath != null){
 			fc = new FileChooser(filePath);
@@ -251,185 +590,287 @@ public class AccessController {
 		}
 		String[] filePaths = fc.getFilePaths();
 		if(filePaths[0].equalsIgnoreCase("No Selection")){
-			return;
+			return null;
 		}
 		filePath = fc.getDirPath();
-		ArrayList<String> data = fr.readFile(filePaths);
-		ArrayList<String> acks = fr.getAckData(data);
-		if(acks.size() == 0){
-			JOptionPane.showMessageDialog(null, "No ACK information was found. Please verify the correct files were chosen."); 
+		return filePaths;
+	}
+	
+	/**
+	 * Method handles the logic for gathering NICS data and writing it to a MS access
+	 * database. Reading the files and writing to the database both happen in the
+	 * background so the window stays responsive, and each file is written as soon
+	 * as it is parsed while the next files are still being parsed.
+	 * 
+	 * @throws IOException
+	 */
+	public void processNics() throws IOException{
+		if(BackgroundTask.isRunning()){
+			JOptionPane.showMessageDialog(null, "Another operation is still running. Please wait for it to finish.");
 			return;
 		}
-		JOptionPane.showMessageDialog(null, "Please select the Microsoft Access Database to write information to.");
-		FileChooser fc2;
-		if(accessPath != null){
-			fc2 = new FileChooser(accessPath);
-		}else{
-			fc2 = new FileChooser();
+		String[] filePaths = chooseFiles("Please select the NICS files you would like to process.\nYou can select multiple files by holding down the 'CTRL' key while you select.");
+		if(filePaths == null){
+			return;
 		}
-		String filePath = fc2.getFilePath();
-		if(filePath.equalsIgnoreCase("No File Selected")){
+		final String databasePath = chooseDatabase("Please select the Microsoft Access Database to write information to.");
+		if(databasePath == null){
+			return;
+		}
+		accessPath = databasePath;
+		filePaths = skipProcessed(filePaths, MessageType.NICS, databasePath);
+		if(filePaths == null){
 			return;
 		}
-		AccessController ac = AccessController.getInstance();
-		ac.openDatabase(filePath);
-		ac.setAcknowledgements(acks);
-		ac.closeDatabase();
-		JOptionPane.showMessageDialog(null, "Information successfully written.");
+		final String[] selected = filePaths;
+		final PipelineMetrics.Snapshot before = PipelineMetrics.getInstance().snapshot();
+		new BackgroundTask<ParallelIngestor.Result>("Writing NICS information", "Could not write to the Patients Table."){
+			private final PatientWriter.Result written = new PatientWriter.Result();
+			
+			@Override
+			protected ParallelIngestor.Result work() throws Exception{
+				connect(databasePath);
+				try{
+					ParallelIngestor.Result parsed = new ParallelIngestor().stream(selected, MessageType.NICS, nicsWriter(written, this), this);
+					if(!isCancelRequested()){
+						recordProcessed(parsed.getProcessedFiles(), MessageType.NICS, databasePath);
+					}
+					return parsed;
+				}finally{
+					disconnect();
+				}
+			}
+			
+			@Override
+			protected void finished(ParallelIngestor.Result parsed, boolean cancelled){
+				logMetrics(before);
+				reportFailures(parsed);
+				if(cancelled){
+					JOptionPane.showMessageDialog(null, "Cancelled. Rows written before cancelling are kept.\n\n" + written);
+				}else if(written.getInserted() + written.getUpdated() + written.getSkipped() == 0){
+					JOptionPane.showMessageDialog(null, "No NICS information was found. Please verify the correct files were chosen."); 
+				}else{
+					JOptionPane.showMessageDialog(null, "Information successfully written.\n\n" + written);
+				}
+			}
+		}.start();
 	}
 	
 	/**
-	 * Method handles logic for printing out a neat table of acknowledged patients
-	 * with the name, meditech ID and update/submit code status.
+	 * Method handles logic for gathering Ack data and cross-checking it against
+	 * a MS Access database. Reading the files and updating the database both
+	 * happen in the background so the window stays responsive.
+	 * 
+	 * @throws IOException
 	 */
-	public void printAcknowledgements(){
-		JOptionPane.showMessageDialog(null, "Please select the Microsoft Access Database to retrieve information from.");
-		FileChooser fc2;
-		if(accessPath != null){
-			fc2 = new FileChooser(accessPath);
-		}else{
-			fc2 = new FileChooser();
+	public void processAcks() throws IOException{
+		if(BackgroundTask.isRunning()){
+			JOptionPane.showMessageDialog(null, "Another operation is still running. Please wait for it to finish.");
+			return;
 		}
-		String filePath = fc2.getFilePath();
-		if(filePath.equalsIgnoreCase("No File Selected")){
+		String[] filePaths = chooseFiles("Please select the ACK files you would like to process.\nYou can select multiple files by holding down the 'CTRL' key while you select.");
+		if(filePaths == null){
 			return;
 		}
-		AccessController ac = AccessController.getInstance();
-		ac.openDatabase(filePath);
-		ArrayList<String> list = new ArrayList<String>();
-		try{
-			patientsTable = db.getTable("Patients");
-			Cursor cur = CursorBuilder.createCursor(patientsTable);
-			while(cur.moveToNextRow()){
-				if(String.valueOf(cur.getCurrentRowValue(patientsTable.getColumn("Acknowledged"))).contains("Yes")){
-					list.add(cur.getCurrentRowValue(patientsTable.getColumn("Patient_Name")).toString() + "," +
-				cur.getCurrentRowValue(patientsTable.getColumn("Meditech_ID")).toString() + "," +
-				cur.getCurrentRowValue(patientsTable.getColumn("Admit_Update")).toString() + "," +
-				cur.getCurrentRowValue(patientsTable.getColumn("Date/Time")).toString());
+		final String databasePath = chooseDatabase("Please select the Microsoft Access Database to write information to.");
+		if(databasePath == null){
+			return;
+		}
+		filePaths = skipProcessed(filePaths, MessageType.ACK, databasePath);
+		if(filePaths == null){
+			return;
+		}
+		final String[] selected = filePaths;
+		final PipelineMetrics.Snapshot before = PipelineMetrics.getInstance().snapshot();
+		new BackgroundTask<AckReconciler.Result>("Matching acknowledgements", "Could not read from the Patients Table."){
+			private ParallelIngestor.Result parsed;
+			
+			@Override
+			protected AckReconciler.Result work() throws Exception{
+				// the scan matches every row against every ID, so all the IDs are needed before it starts
+				Map<String, ArrayList<String>> idsByFile = new LinkedHashMap<String, ArrayList<String>>();
+				parsed = new ParallelIngestor().stream(selected, MessageType.ACK, ParallelIngestor.collectByFile(idsByFile), this);
+				Set<String> acks = new LinkedHashSet<String>();
+				for(ArrayList<String> ids : idsByFile.values()){
+					acks.addAll(ids);
+				}
+				if(isCancelRequested() || acks.isEmpty()){
+					return null;
+				}
+				connect(databasePath);
+				try{
+					AckReconciler.Result result = reconcileAcks(new ArrayList<String>(acks), this);
+					if(!isCancelRequested()){
+						recordProcessed(result.filesMatched(idsByFile), MessageType.ACK, databasePath);
+					}
+					return result;
+				}finally{
+					disconnect();
 				}
 			}
-			ArrayListTableModel altm = new ArrayListTableModel(list);
-			altm.pack();
-			Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
-			// Compute and set the location so the frame is centered
-			int x = screen.width/2-altm.getSize().width/2;
-			int y = screen.height/2-altm.getSize().height/2;
-			altm.setLocation(x, y);
-			altm.setTitle("Acknowledged Patients");
-			altm.setVisible(true);
-		}catch(IOException e){
-			JOptionPane.showMessageDialog(null, "Could not read Patients Table.");
+			
+			@Override
+			protected void finished(AckReconciler.Result result, boolean cancelled){
+				logMetrics(before);
+				reportFailures(parsed);
+				if(cancelled){
+					JOptionPane.showMessageDialog(null, "Cancelled. Rows matched before cancelling remain acknowledged." + (result == null ? "" : "\n\n" + result));
+				}else if(result == null){
+					JOptionPane.showMessageDialog(null, "No ACK information was found. Please verify the correct files were chosen."); 
+				}else{
+					JOptionPane.showMessageDialog(null, "Information successfully written.\n\n" + result);
+				}
+			}
+		}.start();
+	}
+	
+	/**
+	 * Prints what a run read and wrote when {@link PipelineMetrics} are enabled.
+	 * 
+	 * @param before - the metrics when the run started
+	 */
+	private void logMetrics(PipelineMetrics.Snapshot before){
+		if(PipelineMetrics.active()){
+			System.out.println(PipelineMetrics.getInstance().snapshot().since(before));
 		}
-		ac.closeDatabase();
 	}
 	
 	/**
-	 * Method handles logic for printing out a neat table of non-acknowledged patients
-	 * with their name, meditech ID and Update/Submit code status.
+	 * Asks for a database, then reads one of the reports from it in the
+	 * background and shows it once it is ready.
+	 * 
+	 * @param acknowledged - true for the acknowledged report, false for the non-acknowledged one
+	 * @param title - the title of the report window
+	 * @param resolvable - true if rows can be resolved from the report's context menu
 	 */
-	public void printNacknowledgements(){
-		JOptionPane.showMessageDialog(null, "Please select the Microsoft Access Database to retrieve information from.");
-		FileChooser fc2;
-		if(accessPath != null){
-			fc2 = new FileChooser(accessPath);
-		}else{
-			fc2 = new FileChooser();
+	private void showReport(boolean acknowledged, String title, boolean resolvable){
+		if(BackgroundTask.isRunning()){
+			JOptionPane.showMessageDialog(null, "Another operation is still running. Please wait for it to finish.");
+			return;
 		}
-		String filePath = fc2.getFilePath();
-		if(filePath.equalsIgnoreCase("No File Selected")){
+		String filePath = chooseDatabase("Please select the Microsoft Access Database to retrieve information from.");
+		if(filePath == null){
 			return;
 		}
-		AccessController ac = AccessController.getInstance();
-		ac.openDatabase(filePath);
-		ArrayList<String> list = new ArrayList<String>();
-		try{
-			patientsTable = db.getTable("Patients");
-			Cursor cur = CursorBuilder.createCursor(patientsTable);
-			while(cur.moveToNextRow()){
-				if(!String.valueOf(cur.getCurrentRowValue(patientsTable.getColumn("Acknowledged"))).contains("Yes")
-						&& !String.valueOf(cur.getCurrentRowValue(patientsTable.getColumn("Resolved"))).contains("Yes")){
-					list.add(cur.getCurrentRowValue(patientsTable.getColumn("Patient_Name")).toString() + "," +
-					cur.getCurrentRowValue(patientsTable.getColumn("Meditech_ID")).toString() + "," +
-					cur.getCurrentRowValue(patientsTable.getColumn("Admit_Update")).toString() + "," +
-					cur.getCurrentRowValue(patientsTable.getColumn("Date/Time")).toString());
-				}				
+		readReport(filePath, acknowledged, title, resolvable, null);
+	}
+	
+	/**
+	 * Reads one of the reports in the background and shows it once it is ready.
+	 * 
+	 * @param filePath - the database to read
+	 * @param acknowledged - true for the acknowledged report, false for the non-acknowledged one
+	 * @param title - the title of the report window
+	 * @param resolvable - true if rows can be resolved from the report's context menu
+	 * @param replacing - an older window of the same report to close once this one is
+	 * shown, or null
+	 */
+	private void readReport(final String filePath, final boolean acknowledged, final String title,
+			final boolean resolvable, final ArrayListTableModel replacing){
+		new BackgroundTask<PatientReport>("Reading " + title, "Could not read Patients Table."){
+			@Override
+			protected PatientReport work() throws Exception{
+				connect(filePath);
+				try{
+					return getPatientReport(this);
+				}finally{
+					disconnect();
+				}
 			}
-			ArrayListTableModel altm = new ArrayListTableModel(list);
-			altm.pack();
-			Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
-			// Compute and set the location so the frame is centered
-			int x = screen.width/2-altm.getSize().width/2;
-			int y = screen.height/2-altm.getSize().height/2;
-			altm.setLocation(x, y);
-			altm.setTitle("Non-Acknowledged Patients");
-			altm.setVisible(true);
-		}catch(IOException e){
-			JOptionPane.showMessageDialog(null, "Could not read Patients Table.");
-		}
-		ac.closeDatabase();
+			
+			@Override
+			protected void finished(PatientReport report, boolean cancelled){
+				if(cancelled || !report.isComplete()){
+					return;
+				}
+				List<PatientRecord> records = acknowledged ? report.getAcknowledged() : report.getUnresolved();
+				final ArrayListTableModel altm = new ArrayListTableModel(new PatientTableModel(records));
+				if(resolvable){
+					// read the report again so the resolved row drops out of it
+					altm.enableResolve(filePath, new Runnable(){
+						@Override
+						public void run(){
+							readReport(filePath, acknowledged, title, resolvable, altm);
+						}
+					});
+				}
+				showTable(altm, title);
+				if(replacing != null){
+					replacing.dispose();
+				}
+			}
+		}.start();
+	}
+	
+	/**
+	 * Method handles logic for printing out a neat table of acknowledged patients
+	 * with the name, meditech ID and update/submit code status.
+	 */
+	public void printAcknowledgements(){
+		showReport(true, "Acknowledged Patients", false);
+	}
+	
+	/**
+	 * Method handles logic for printing out a neat table of non-acknowledged patients
+	 * with their name, meditech ID and Update/Submit code status.
+	 */
+	public void printNacknowledgements(){
+		showReport(false, "Non-Acknowledged Patients", false);
 	}
 	
 	public void resolveNacks(){
-		JOptionPane.showMessageDialog(null, "Please select the Microsoft Access Database to retrieve information from.");
-		FileChooser fc2;
-		if(accessPath != null){
-			fc2 = new FileChooser(accessPath);
-		}else{
-			fc2 = new FileChooser();
+		showReport(false, "Non-Acknowledged Patients", true);
+	}
+	
+	/**
+	 * Method handles logic for showing every row of the Patients table. Rows
+	 * are read a page at a time as the table is scrolled, so the window opens
+	 * right away however large the table is.
+	 */
+	public void showPatientHistory(){
+		if(BackgroundTask.isRunning()){
+			JOptionPane.showMessageDialog(null, "Another operation is still running. Please wait for it to finish.");
+			return;
 		}
-		String filePath = fc2.getFilePath();
-		if(filePath.equalsIgnoreCase("No File Selected")){
+		final String filePath = chooseDatabase("Please select the Microsoft Access Database to retrieve information from.");
+		if(filePath == null){
 			return;
 		}
-		AccessController ac = AccessController.getInstance();
-		ac.openDatabase(filePath);
-		ArrayList<String> list = new ArrayList<String>();
-		try{
-			patientsTable = db.getTable("Patients");
-			Cursor cur = CursorBuilder.createCursor(patientsTable);
-			while(cur.moveToNextRow()){
-				if(!cur.getCurrentRowValue(patientsTable.getColumn("Acknowledged")).toString().contains("Yes")
-						&& !cur.getCurrentRowValue(patientsTable.getColumn("Resolved")).toString().contains("Yes")){
-					list.add(cur.getCurrentRowValue(patientsTable.getColumn("Patient_Name")).toString() + "," +
-					cur.getCurrentRowValue(patientsTable.getColumn("Meditech_ID")).toString() + "," +
-					cur.getCurrentRowValue(patientsTable.getColumn("Admit_Update")).toString() + "," +
-					cur.getCurrentRowValue(patientsTable.getColumn("Date/Time")).toString());
-					System.out.println("!");
-				}
+		new BackgroundTask<PagedPatientTableModel>("Opening Patient History", "Could not read Patients Table."){
+			@Override
+			protected PagedPatientTableModel work() throws Exception{
+				return new PagedPatientTableModel(filePath);
 			}
-			ArrayListTableModel altm = new ArrayListTableModel(list);
-			altm.pack();
-			Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
-			// Compute and set the location so the frame is centered
-			int x = screen.width/2-altm.getSize().width/2;
-			int y = screen.height/2-altm.getSize().height/2;
-			altm.setLocation(x, y);
-			altm.setTitle("Non-Acknowledged Patients");
-			altm.setVisible(true);
-			altm.addMouseListener(new MouseAdapter(){
-				boolean isClicked;
-				public void mouseClicked(MouseEvent mouseEvent){
-					JTable table = (JTable) mouseEvent.getSource();
-					int row = table.getSelectedRow();
-					if(isClicked){
-						writeResolvedNack(row);
-					}else{
-						isClicked = true;
-						Timer t = new Timer("doubleClickTimer", false);
-						t.schedule(new TimerTask(){
-							@Override
-							public void run(){
-								isClicked = false;
-							}
-						}, (Long) Toolkit.getDefaultToolkit().getDesktopProperty("awt.multiClickInterval"));
+			
+			@Override
+			protected void finished(PagedPatientTableModel model, boolean cancelled){
+				if(cancelled){
+					try{
+						model.close();
+					}catch(IOException e){
 					}
+					return;
 				}
-			});
-		}catch(IOException e){
-			JOptionPane.showMessageDialog(null, "Could not read Patients Table.");
-		}
-		ac.closeDatabase();
+				showTable(new ArrayListTableModel(model), "Patient History");
+				model.findPages();
+			}
+		}.start();
 	}
 	
+	/**
+	 * Sizes, centers and shows a report window.
+	 */
+	private void showTable(ArrayListTableModel altm, String title){
+		altm.pack();
+		Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+		// Compute and set the location so the frame is centered
+		int x = screen.width/2-altm.getSize().width/2;
+		int y = screen.height/2-altm.getSize().height/2;
+		altm.setLocation(x, y);
+		altm.setTitle(title);
+		altm.setVisible(true);
+	}
+	
+	
 
 }
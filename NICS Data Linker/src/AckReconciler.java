@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.healthmarketscience.jackcess.Column;
+import com.healthmarketscience.jackcess.Cursor;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.Table;
+
+/**
+ * Reconciles a set of ACK Meditech IDs against the Patients table. The ACK IDs
+ * are compiled once into an {@link AhoCorasickMatcher} and every Patients row
+ * is visited a single time, with the column handles resolved before the scan
+ * starts. A row is considered acknowledged when its Meditech ID contains one
+ * of the ACK IDs, which is the same rule the controller has always used, and
+ * the cost of checking a row does not grow with the number of ACKs loaded.
+ */
+public class AckReconciler {
+
+	private static final int PROGRESS_INTERVAL = 1000;
+
+	// the distinct ACK IDs, in the order the matcher numbers them
+	private final List<String> ids;
+	private final AhoCorasickMatcher matcher;
+
+	/**
+	 * Compiles the ACK IDs. Duplicates are dropped.
+	 * @param ackData - the ACK IDs gathered by {@link FileReader#getAckData(ArrayList)}
+	 */
+	public AckReconciler(Collection<String> ackData){
+		ids = new ArrayList<String>(new LinkedHashSet<String>(ackData));
+		matcher = new AhoCorasickMatcher(ids);
+	}
+
+	/**
+	 * Checks a Meditech ID against the ACK IDs.
+	 * @param meditechId - the Meditech ID of a Patients row
+	 * @return true if any ACK ID is contained in the Meditech ID
+	 */
+	public boolean matches(String meditechId){
+		return matcher.matches(meditechId);
+	}
+
+	/**
+	 * Scans the Patients table once and marks every matching row as acknowledged.
+	 * Rows that are already acknowledged are counted but not rewritten.
+	 *
+	 * @param patientsTable - the Patients table
+	 * @return counts of what happened to the rows
+	 * @throws IOException
+	 */
+	public Result reconcile(Table patientsTable) throws IOException{
+		return reconcile(patientsTable, ProgressListener.NONE);
+	}
+
+	/**
+	 * Scans the Patients table once and marks every matching row as acknowledged,
+	 * reporting progress as it goes. If cancellation is requested the scan stops
+	 * and the rows already marked stay marked.
+	 *
+	 * @param patientsTable - the Patients table
+	 * @param listener - receives progress and may request cancellation
+	 * @return counts of what happened to the rows scanned
+	 * @throws IOException
+	 */
+	public Result reconcile(Table patientsTable, ProgressListener listener) throws IOException{
+		Result result = new Result();
+		Column meditechCol = patientsTable.getColumn("Meditech_ID");
+		Column ackCol = patientsTable.getColumn("Acknowledged");
+		Cursor cur = CursorBuilder.createCursor(patientsTable);
+		int totalRows = patientsTable.getRowCount();
+		long start = PipelineMetrics.now();
+		long writeNanos = 0;
+		BitSet found = new BitSet(ids.size());
+		while(cur.moveToNextRow()){
+			if(result.rowsScanned % PROGRESS_INTERVAL == 0){
+				listener.progress("Matching rows", result.rowsScanned, totalRows);
+				if(listener.isCancelRequested()){
+					break;
+				}
+			}
+			result.rowsScanned++;
+			Object meditechId = cur.getCurrentRowValue(meditechCol);
+			if(meditechId == null || !matcher.findAll(meditechId.toString(), found)){
+				result.unmatched++;
+			}else if(String.valueOf(cur.getCurrentRowValue(ackCol)).contains("Yes")){
+				result.alreadyAcknowledged++;
+			}else{
+				long write = PipelineMetrics.now();
+				AckUpdateEvent event = new AckUpdateEvent();
+				event.begin();
+				cur.setCurrentRowValue(ackCol, "Yes");
+				if(event.shouldCommit()){
+					event.row = result.rowsScanned;
+					event.commit();
+				}
+				writeNanos += PipelineMetrics.since(write);
+				result.newlyAcknowledged++;
+			}
+		}
+		for(int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)){
+			result.matchedIds.add(ids.get(i));
+		}
+		PipelineMetrics.scanned(result.rowsScanned, result.newlyAcknowledged + result.alreadyAcknowledged, PipelineMetrics.since(start) - writeNanos);
+		PipelineMetrics.written(result.newlyAcknowledged, writeNanos);
+		listener.progress("Matching rows", result.rowsScanned, totalRows);
+		return result;
+	}
+
+	/**
+	 * Outcome of a reconciliation run.
+	 */
+	public static class Result {
+		private int rowsScanned;
+		private int newlyAcknowledged;
+		private int alreadyAcknowledged;
+		private int unmatched;
+		private final Set<String> matchedIds = new HashSet<String>();
+
+		public int getRowsScanned(){
+			return rowsScanned;
+		}
+
+		public int getNewlyAcknowledged(){
+			return newlyAcknowledged;
+		}
+
+		public int getAlreadyAcknowledged(){
+			return alreadyAcknowledged;
+		}
+
+		public int getUnmatched(){
+			return unmatched;
+		}
+
+		/**
+		 * @return the ACK IDs that matched at least one row scanned, whether it
+		 * was newly or already acknowledged
+		 */
+		public Set<String> getMatchedIds(){
+			return Collections.unmodifiableSet(matchedIds);
+		}
+
+		/**
+		 * Picks out the ACK files that acknowledged something, so that a file
+		 * whose patients are not in the table yet is read again next time.
+		 * @param idsByFile - the ACK IDs read from each file
+		 * @return the files with at least one matched ID, in the order given
+		 */
+		public List<String> filesMatched(Map<String, ? extends Collection<String>> idsByFile){
+			List<String> files = new ArrayList<String>();
+			for(Map.Entry<String, ? extends Collection<String>> file : idsByFile.entrySet()){
+				for(String id : file.getValue()){
+					if(matchedIds.contains(id)){
+						files.add(file.getKey());
+						break;
+					}
+				}
+			}
+			return files;
+		}
+
+		@Override
+		public String toString(){
+			return "Rows scanned: " + rowsScanned +
+					"\nNewly acknowledged: " + newlyAcknowledged +
+					"\nAlready acknowledged: " + alreadyAcknowledged +
+					"\nNo matching ACK: " + unmatched;
+		}
+	}
+}
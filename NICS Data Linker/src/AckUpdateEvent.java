@@ -0,0 +1,24 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for marking one Patients row acknowledged. A
+ * reconciliation can update hundreds of thousands of rows, so by default only
+ * updates slower than a millisecond, the ones that waited on the disk, are
+ * recorded; the {@link PatientsScanEvent} of the same pass has the total.
+ */
+@Name("nics.AckUpdate")
+@Label("ACK Update")
+@Category({"NICS Data Linker", "Database"})
+@Description("A Patients row marked acknowledged")
+@Threshold("1 ms")
+public class AckUpdateEvent extends Event {
+
+	@Label("Row")
+	@Description("How far into the scan the row was")
+	int row;
+}
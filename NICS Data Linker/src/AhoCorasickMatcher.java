@@ -0,0 +1,203 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Aho-Corasick automaton built over a set of patterns that answers whether
+ * a piece of text contains any of them. The answer is exactly the same as
+ * calling {@link String#contains(CharSequence)} with every pattern in turn,
+ * but the text is only walked once, so the cost of a check depends on the
+ * length of the text and not on the number of patterns.
+ *
+ * The automaton is immutable once built and can be shared between threads.
+ */
+public class AhoCorasickMatcher {
+
+	private static final char[] NO_KEYS = new char[0];
+	private static final int[] NO_TARGETS = new int[0];
+
+	// per state, sorted transition characters and the states they lead to
+	private final char[][] keys;
+	private final int[][] targets;
+	private final int[] fail;
+	// true if a pattern ends at this state or at any state on its failure chain
+	private final boolean[] terminal;
+	// per state, the first pattern ending exactly there or -1, and the nearest
+	// state on its failure chain where a pattern ends or -1
+	private final int[] pattern;
+	private final int[] output;
+	private final int patternCount;
+
+	/**
+	 * Builds the automaton.
+	 * @param patterns - the patterns to look for, duplicates are allowed
+	 */
+	public AhoCorasickMatcher(Collection<String> patterns){
+		List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+		List<Integer> ends = new ArrayList<Integer>();
+		trie.add(new HashMap<Character, Integer>());
+		ends.add(Integer.valueOf(-1));
+		int count = 0;
+		for(String pattern : patterns){
+			count++;
+			int state = 0;
+			for(int i = 0; i < pattern.length(); i++){
+				Character c = Character.valueOf(pattern.charAt(i));
+				Integer next = trie.get(state).get(c);
+				if(next == null){
+					next = Integer.valueOf(trie.size());
+					trie.get(state).put(c, next);
+					trie.add(new HashMap<Character, Integer>());
+					ends.add(Integer.valueOf(-1));
+				}
+				state = next.intValue();
+			}
+			if(ends.get(state).intValue() < 0){
+				ends.set(state, Integer.valueOf(count - 1));
+			}
+		}
+		patternCount = count;
+
+		int states = trie.size();
+		keys = new char[states][];
+		targets = new int[states][];
+		fail = new int[states];
+		terminal = new boolean[states];
+		pattern = new int[states];
+		output = new int[states];
+		output[0] = -1;
+		for(int s = 0; s < states; s++){
+			Map<Character, Integer> children = trie.get(s);
+			pattern[s] = ends.get(s).intValue();
+			terminal[s] = pattern[s] >= 0;
+			if(children.isEmpty()){
+				keys[s] = NO_KEYS;
+				targets[s] = NO_TARGETS;
+				continue;
+			}
+			char[] k = new char[children.size()];
+			int i = 0;
+			for(Character c : children.keySet()){
+				k[i++] = c.charValue();
+			}
+			Arrays.sort(k);
+			int[] t = new int[k.length];
+			for(i = 0; i < k.length; i++){
+				t[i] = children.get(Character.valueOf(k[i])).intValue();
+			}
+			keys[s] = k;
+			targets[s] = t;
+		}
+
+		// breadth first so every failure target is finished before it is used
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		for(int i = 0; i < targets[0].length; i++){
+			fail[targets[0][i]] = 0;
+			output[targets[0][i]] = pattern[0] >= 0 ? 0 : -1;
+			queue.add(Integer.valueOf(targets[0][i]));
+		}
+		while(!queue.isEmpty()){
+			int s = queue.poll().intValue();
+			for(int i = 0; i < keys[s].length; i++){
+				char c = keys[s][i];
+				int child = targets[s][i];
+				int f = fail[s];
+				int next = step(f, c);
+				while(next < 0 && f != 0){
+					f = fail[f];
+					next = step(f, c);
+				}
+				fail[child] = next < 0 ? 0 : next;
+				terminal[child] |= terminal[fail[child]];
+				output[child] = pattern[fail[child]] >= 0 ? fail[child] : output[fail[child]];
+				queue.add(Integer.valueOf(child));
+			}
+		}
+	}
+
+	/**
+	 * @return the number of patterns the automaton was built from
+	 */
+	public int getPatternCount(){
+		return patternCount;
+	}
+
+	/**
+	 * Checks whether the text contains any of the patterns.
+	 * @param text - the text to search
+	 * @return true if at least one pattern occurs in the text
+	 */
+	public boolean matches(CharSequence text){
+		if(terminal[0]){
+			// an empty pattern is contained in everything
+			return true;
+		}
+		int state = 0;
+		for(int i = 0; i < text.length(); i++){
+			char c = text.charAt(i);
+			int next = step(state, c);
+			while(next < 0 && state != 0){
+				state = fail[state];
+				next = step(state, c);
+			}
+			state = next < 0 ? 0 : next;
+			if(terminal[state]){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds every pattern that occurs in the text, where {@link #matches(CharSequence)}
+	 * stops at the first.
+	 * @param text - the text to search
+	 * @param found - gets the bit set for each pattern found, numbered in the
+	 * order the patterns were given; a duplicate shares the bit of its first
+	 * copy. It may already hold bits from earlier calls, to gather the
+	 * patterns found across many texts.
+	 * @return true if at least one pattern occurs in the text
+	 */
+	public boolean findAll(CharSequence text, BitSet found){
+		boolean any = mark(0, found);
+		int state = 0;
+		for(int i = 0; i < text.length(); i++){
+			char c = text.charAt(i);
+			int next = step(state, c);
+			while(next < 0 && state != 0){
+				state = fail[state];
+				next = step(state, c);
+			}
+			state = next < 0 ? 0 : next;
+			any |= mark(state, found);
+		}
+		return any;
+	}
+
+	/**
+	 * Sets the bits of the patterns ending at a state. The output chain is
+	 * only followed up to a pattern that is already set, since the rest of
+	 * the chain was set along with it.
+	 * @return true if any pattern ends at the state
+	 */
+	private boolean mark(int state, BitSet found){
+		for(int s = pattern[state] >= 0 ? state : output[state]; s >= 0 && !found.get(pattern[s]); s = output[s]){
+			found.set(pattern[s]);
+		}
+		return terminal[state];
+	}
+
+	/**
+	 * Follows a trie edge.
+	 * @return the next state or -1 if there is no edge for the character
+	 */
+	private int step(int state, char c){
+		int i = Arrays.binarySearch(keys[state], c);
+		return i < 0 ? -1 : targets[state][i];
+	}
+}
@@ -14,6 +14,8 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.*;
@@ -27,9 +29,10 @@ import javax.swing.table.*;
 import net.miginfocom.swing.MigLayout;
 
 /**
- * Class serves as a table model for a JTable that
- * converts comma separated arraylist strings into 
- * a JTable.
+ * Class serves as a window for a JTable that shows
+ * patient report rows held in a {@link PatientTableModel}.
+ * Comma separated arraylist strings are still accepted
+ * and are converted into the model once.
  *
  * @contributor Ryan Castner
  */
@@ -38,8 +41,8 @@ public class ArrayListTableModel extends JFrame {
 	
 	private JTable table;
 	private JTextField filterText;
-	private TableRowSorter<MyModel> sorter;
-	private final static String[] header = {"Patient Name", "Meditech ID", "Code", "Date/Time"};
+	private TableRowSorter<TableModel> sorter;
+	private TableSearch search;
 	private static final String DEFAULT = "Search Table...";
 	
 	private JTextField usernameField;
@@ -49,8 +52,37 @@ public class ArrayListTableModel extends JFrame {
 	private final String USER_DEFAULT = "Username";
 	private final String PASS_DEFAULT = "Password";
 	
+	// where resolved rows are written, or null if the report is read only
+	private String resolveDatabase;
+	private Runnable onResolved;
+	
 	ArrayListTableModel(ArrayList<String> al) {
-		MyModel mm = new MyModel(al, header);
+		this(PatientTableModel.fromCsv(al));
+	}
+	
+	ArrayListTableModel(PatientTableModel mm) {
+		this(mm, true);
+	}
+	
+	/**
+	 * Shows the whole Patients table a page at a time. Sorting and searching
+	 * would have to read every row, so they are not offered for this view.
+	 * The model is closed along with the window.
+	 */
+	ArrayListTableModel(final PagedPatientTableModel mm) {
+		this(mm, false);
+		this.addWindowListener(new WindowAdapter(){
+			@Override
+			public void windowClosed(WindowEvent e){
+				try{
+					mm.close();
+				}catch(IOException e1){
+				}
+			}
+		});
+	}
+	
+	private ArrayListTableModel(TableModel mm, boolean searchable) {
 		table = new JTable(mm);
 		table.addMouseListener(new MouseAdapter(){
 			public void mousePressed(MouseEvent e){
@@ -66,16 +98,32 @@ public class ArrayListTableModel extends JFrame {
 			}
 			
 			private void doContextMenu(MouseEvent e){
+				if(resolveDatabase == null){
+					return;
+				}
+				int row = table.rowAtPoint(e.getPoint());
+				if(row >= 0){
+					table.setRowSelectionInterval(row, row);
+				}
 				ResolveContextMenu menu = new ResolveContextMenu();
 				menu.show(e.getComponent(), e.getX(), e.getY());
 			}
 		});
-		sorter = new TableRowSorter<MyModel>(mm);
+		if(searchable){
+			sorter = new TableRowSorter<TableModel>(mm);
+			table.setRowSorter(sorter);
+			search = new TableSearch(mm, sorter);
+			this.addWindowListener(new WindowAdapter(){
+				@Override
+				public void windowClosed(WindowEvent e){
+					search.close();
+				}
+			});
+		}
 		DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
 		centerRenderer.setHorizontalAlignment(JLabel.CENTER);
 		((DefaultTableCellRenderer)table.getTableHeader().getDefaultRenderer())
 	    .setHorizontalAlignment(JLabel.CENTER);
-		table.setRowSorter(sorter);
 		TableColumn col = null;
 		for(int i = 0; i < table.getColumnCount(); i++){
 			col = table.getColumnModel().getColumn(i);
@@ -126,7 +174,9 @@ public class ArrayListTableModel extends JFrame {
 		});
 		filterText.setMinimumSize(filterText.getPreferredSize());
 		form.add(filterText);
-		this.add(form, BorderLayout.SOUTH);
+		if(searchable){
+			this.add(form, BorderLayout.SOUTH);
+		}
 		setVisible(true);
 		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		
@@ -183,15 +233,32 @@ public class ArrayListTableModel extends JFrame {
 		loginPanel.setBackground(new Color(135, 206, 250, 50));
 	}
 	
+	/**
+	 * @return the Patient_ID of the selected row, or -1 if no row is selected
+	 * or the report does not know it
+	 */
+	int getSelectedPatientId(){
+		int row = table.getSelectedRow();
+		if(row < 0 || !(table.getModel() instanceof PatientTableModel)){
+			return -1;
+		}
+		return ((PatientTableModel) table.getModel()).getPatientId(table.convertRowIndexToModel(row));
+	}
+	
+	/**
+	 * Offers "Resolve Nack" on the report's rows. Resolving asks for a GGH
+	 * Admins login before anything is written.
+	 * @param databasePath - the database the report was read from
+	 * @param onResolved - run on the event dispatch thread after a row is resolved
+	 */
+	void enableResolve(String databasePath, Runnable onResolved){
+		this.resolveDatabase = databasePath;
+		this.onResolved = onResolved;
+	}
+	
 	private void newFilter(){
-		if(!filterText.getText().equals(DEFAULT)){
-			RowFilter<MyModel, Object> rf = null;
-			try{
-				rf = RowFilter.regexFilter("(?i)" + filterText.getText());
-			}catch(java.util.regex.PatternSyntaxException e){
-				return;
-			}
-			sorter.setRowFilter(rf);
+		if(search != null && !filterText.getText().equals(DEFAULT)){
+			search.setQuery(filterText.getText());
 		}
 	}
 	
@@ -218,45 +285,9 @@ public class ArrayListTableModel extends JFrame {
 	}
 	
 	public boolean verifyPassword(String username, String password){
-		boolean authResult = false;
-		System.out.println(username + " " + password);
-		MemberOfAuth auth = new MemberOfAuth("FLH.LOCAL");
-		authResult = auth.isMemberOf("GGH Admins", username, password);
-		return authResult;
+		return AccessController.getInstance().verifyPassword(username, password);
 	}
 	
-	class MyModel extends AbstractTableModel {
-		
-		private ArrayList<String> al;
-		private String[] header;
-		
-		MyModel(ArrayList<String> al, String[] header) {
-			this.al = al;
-			this.header = header;
-		}
-
-		public int getColumnCount() {
-			return header.length;
-		}
-
-		public int getRowCount() {
-			return al.size();
-		}
-
-		public Object getValueAt(int rowIndex, int columnIndex) {
-			String[] token = al.get(rowIndex).split(",");
-			return token[columnIndex];
-		}
-
-		public String getColumnName(int col) {
-			return header[col];
-		}	
-		
-		public boolean isCellEditable(int row, int col){
-			return false;
-		}
-	}
-
 	class ResolveContextMenu extends JPopupMenu implements ActionListener{
 		private JMenuItem resolveNack;
 		public ResolveContextMenu(){
@@ -278,17 +309,19 @@ public class ArrayListTableModel extends JFrame {
 		
 		@Override
 		public void actionPerformed(ActionEvent e) {
-			if(e.getSource() == this.resolveNack);{
-				int authVal = 0;
+			if(e.getSource() == this.resolveNack){
+				int patientId = getSelectedPatientId();
+				if(patientId < 0){
+					return;
+				}
+				int authVal;
 				try {
 					authVal = authenticate();
 				} catch (NamingException e1) {
-					// TODO Auto-generated catch block
-					e1.printStackTrace();
+					authVal = -1;
 				}
-				System.out.println(authVal);
 				if(authVal == 1){
-					System.out.println("win");
+					AccessController.getInstance().writeResolvedNack(resolveDatabase, patientId, onResolved);
 				}else if(authVal == -1){
 					JOptionPane.showMessageDialog(null, "Authentication failed: either unknown user or bad password.");
 				}
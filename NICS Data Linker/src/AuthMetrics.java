@@ -0,0 +1,98 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and timings for the domain controller work behind an elevation
+ * prompt: SRV discovery of the domain controllers, the LDAP bind, and how
+ * often a slow controller made a connection to another one start. Safe to update
+ * from several threads at once.
+ */
+public class AuthMetrics {
+
+	private final Timing discovery = new Timing();
+	private final Timing bind = new Timing();
+	private final AtomicLong hedges = new AtomicLong();
+
+	void recordDiscovery(long nanos, boolean succeeded){
+		discovery.record(nanos, succeeded);
+	}
+
+	void recordBind(long nanos, boolean succeeded){
+		bind.record(nanos, succeeded);
+	}
+
+	void recordHedge(){
+		hedges.incrementAndGet();
+	}
+
+	/**
+	 * @return SRV lookups made, not counting ones answered from the cache
+	 */
+	public long getDiscoveryCount(){
+		return discovery.count.get();
+	}
+
+	public long getDiscoveryFailures(){
+		return discovery.failures.get();
+	}
+
+	public double getDiscoveryAverageMillis(){
+		return discovery.averageMillis();
+	}
+
+	/**
+	 * @return LDAP binds attempted, including ones that failed
+	 */
+	public long getBindCount(){
+		return bind.count.get();
+	}
+
+	public long getBindFailures(){
+		return bind.failures.get();
+	}
+
+	public double getBindAverageMillis(){
+		return bind.averageMillis();
+	}
+
+	public double getBindMaxMillis(){
+		return bind.maxNanos.get() / 1e6;
+	}
+
+	/**
+	 * @return connections started because the controllers already tried were slow to connect
+	 */
+	public long getHedgeCount(){
+		return hedges.get();
+	}
+
+	@Override
+	public String toString(){
+		return String.format("SRV lookups: %d (%d failed, %.1f ms average)%nLDAP binds: %d (%d failed, %.1f ms average, %.1f ms max, %d hedged connects)",
+				getDiscoveryCount(), getDiscoveryFailures(), getDiscoveryAverageMillis(),
+				getBindCount(), getBindFailures(), getBindAverageMillis(), getBindMaxMillis(), getHedgeCount());
+	}
+
+	private static class Timing {
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong failures = new AtomicLong();
+		final AtomicLong totalNanos = new AtomicLong();
+		final AtomicLong maxNanos = new AtomicLong();
+
+		void record(long nanos, boolean succeeded){
+			count.incrementAndGet();
+			if(!succeeded){
+				failures.incrementAndGet();
+			}
+			totalNanos.addAndGet(nanos);
+			long max = maxNanos.get();
+			while(nanos > max && !maxNanos.compareAndSet(max, nanos)){
+				max = maxNanos.get();
+			}
+		}
+
+		double averageMillis(){
+			long n = count.get();
+			return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers recent successful elevations for a short time so that resolving
+ * a run of NACKs or changing several settings does not go back to Active
+ * Directory for every prompt. Only positive decisions are kept, they expire
+ * after a fixed time, and the oldest are dropped once the cache is full.
+ *
+ * Entries are keyed by a SHA-256 hash of the group, user name and password
+ * mixed with a random salt made when the cache is created, so no password is
+ * ever held and the keys are useless outside this process. A different
+ * password for the same user does not match a cached entry.
+ */
+public class AuthorizationCache {
+
+	public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+	public static final int DEFAULT_MAX_ENTRIES = 32;
+
+	private final long ttlMillis;
+	private final byte[] salt = new byte[32];
+	private final LinkedHashMap<String, Decision> entries;
+
+	public AuthorizationCache(){
+		this(DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param ttlMillis - how long a successful elevation is remembered
+	 * @param maxEntries - how many elevations are remembered at once
+	 */
+	public AuthorizationCache(long ttlMillis, final int maxEntries){
+		this.ttlMillis = ttlMillis;
+		new SecureRandom().nextBytes(salt);
+		this.entries = new LinkedHashMap<String, Decision>(16, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest){
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @return true if the user was granted the group with this password recently enough
+	 */
+	public synchronized boolean isAuthorized(String group, String user, String password){
+		String key = key(group, user, password);
+		Decision entry = entries.get(key);
+		if(entry == null){
+			return false;
+		}
+		if(System.currentTimeMillis() >= entry.expires){
+			entries.remove(key);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Records a successful check against the directory.
+	 */
+	public synchronized void authorized(String group, String user, String password){
+		entries.put(key(group, user, password), new Decision(user, System.currentTimeMillis() + ttlMillis));
+	}
+
+	/**
+	 * Forgets every elevation remembered for the user.
+	 * @param user - the account name, matched ignoring case
+	 */
+	public synchronized void invalidate(String user){
+		Iterator<Decision> it = entries.values().iterator();
+		while(it.hasNext()){
+			if(it.next().user.equalsIgnoreCase(user)){
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Forgets every remembered elevation.
+	 */
+	public synchronized void clear(){
+		entries.clear();
+	}
+
+	public synchronized int size(){
+		return entries.size();
+	}
+
+	private String key(String group, String user, String password){
+		try{
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(salt);
+			digest.update(group.getBytes("UTF-8"));
+			digest.update((byte) 0);
+			digest.update(user.toLowerCase().getBytes("UTF-8"));
+			digest.update((byte) 0);
+			digest.update(password.getBytes("UTF-8"));
+			byte[] hash = digest.digest();
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+			for(byte b : hash){
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return hex.toString();
+		}catch(NoSuchAlgorithmException e){
+			throw new IllegalStateException(e);
+		}catch(UnsupportedEncodingException e){
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class Decision {
+		final String user;
+		final long expires;
+
+		Decision(String user, long expires){
+			this.user = user;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * Runs database and file work off the event dispatch thread so the window
+ * stays responsive. While the work runs a progress monitor shows the current
+ * step, rows per second and an estimate of the time left, and its Cancel
+ * button asks the work to stop at the next safe point. The result is handed
+ * to {@link #finished(Object, boolean)} back on the event dispatch thread,
+ * including the partial result of a cancelled run.
+ *
+ * Only one task runs at a time since all of them share the single
+ * {@link AccessController}.
+ */
+public abstract class BackgroundTask<T> extends SwingWorker<T, Void> implements ProgressListener {
+
+	private static final int SCALE = 1000;
+	private static final int REFRESH_MILLIS = 200;
+	private static BackgroundTask<?> running;
+
+	private final String failureMessage;
+	private final ProgressMonitor monitor;
+	private final Timer refresher;
+
+	private volatile boolean cancelRequested;
+	private volatile String stage = "Starting";
+	private volatile long done;
+	private volatile long total = -1;
+	private volatile long stageStart = System.nanoTime();
+
+	/**
+	 * @param title - what the progress monitor says is happening
+	 * @param failureMessage - shown along with the error if the work fails
+	 */
+	protected BackgroundTask(String title, String failureMessage){
+		this.failureMessage = failureMessage;
+		this.monitor = new ProgressMonitor(null, title, "Starting...", 0, SCALE);
+		this.monitor.setMillisToDecideToPopup(250);
+		this.monitor.setMillisToPopup(500);
+		this.refresher = new Timer(REFRESH_MILLIS, new ActionListener(){
+			@Override
+			public void actionPerformed(ActionEvent e){
+				refresh();
+			}
+		});
+	}
+
+	/**
+	 * @return true if a task is still running. Must be called on the event dispatch thread.
+	 */
+	public static boolean isRunning(){
+		return running != null;
+	}
+
+	/**
+	 * Starts the work. Must be called on the event dispatch thread.
+	 * @return false if another task is still running and this one was not started
+	 */
+	public boolean start(){
+		if(running != null){
+			JOptionPane.showMessageDialog(null, "Another operation is still running. Please wait for it to finish.");
+			return false;
+		}
+		running = this;
+		refresher.start();
+		execute();
+		return true;
+	}
+
+	/**
+	 * The work itself, run on a background thread. Report progress to and check
+	 * for cancellation through this task, which is a {@link ProgressListener}.
+	 * @return the result, which may be partial if cancellation was requested
+	 * @throws Exception
+	 */
+	protected abstract T work() throws Exception;
+
+	/**
+	 * Called on the event dispatch thread once the work has returned.
+	 * @param result - what the work returned
+	 * @param cancelled - true if the user cancelled, in which case the result may be partial
+	 */
+	protected abstract void finished(T result, boolean cancelled);
+
+	/**
+	 * Called on the event dispatch thread if the work threw.
+	 * @param cause - what went wrong
+	 */
+	protected void failed(Throwable cause){
+		JOptionPane.showMessageDialog(null, failureMessage + "\n" + cause.getMessage());
+	}
+
+	@Override
+	public void progress(String stage, long done, long total){
+		if(!stage.equals(this.stage)){
+			this.stageStart = System.nanoTime();
+			this.stage = stage;
+		}
+		this.total = total;
+		this.done = done;
+	}
+
+	@Override
+	public boolean isCancelRequested(){
+		return cancelRequested;
+	}
+
+	@Override
+	protected final T doInBackground() throws Exception{
+		return work();
+	}
+
+	@Override
+	protected final void done(){
+		refresher.stop();
+		monitor.close();
+		running = null;
+		try{
+			finished(get(), cancelRequested);
+		}catch(ExecutionException e){
+			failed(e.getCause() != null ? e.getCause() : e);
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Updates the monitor from the latest reported progress.
+	 */
+	private void refresh(){
+		if(monitor.isCanceled()){
+			cancelRequested = true;
+			return;
+		}
+		long done = this.done;
+		long total = this.total;
+		StringBuilder note = new StringBuilder(stage);
+		if(total > 0){
+			monitor.setProgress((int) Math.min(SCALE - 1, done * SCALE / total));
+			note.append(": ").append(String.format("%,d of %,d", done, total));
+		}else if(done > 0){
+			note.append(": ").append(String.format("%,d", done));
+		}
+		double seconds = (System.nanoTime() - stageStart) / (double) TimeUnit.SECONDS.toNanos(1);
+		if(done > 0 && seconds > 0.5){
+			double rate = done / seconds;
+			note.append(String.format(" - %,.0f/s", rate));
+			if(total > done){
+				long left = (long) Math.ceil((total - done) / rate);
+				note.append(String.format(" - about %d:%02d left", left / 60, left % 60));
+			}
+		}
+		monitor.setNote(note.toString());
+	}
+}
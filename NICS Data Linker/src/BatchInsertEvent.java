@@ -0,0 +1,18 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one batch of rows added to the Patients table.
+ */
+@Name("nics.BatchInsert")
+@Label("Patients Batch Insert")
+@Category({"NICS Data Linker", "Database"})
+@Description("A batch of NICS records added to the Patients table")
+public class BatchInsertEvent extends Event {
+
+	@Label("Rows")
+	int rows;
+}
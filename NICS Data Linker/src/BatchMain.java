@@ -0,0 +1,387 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Headless entry point that runs the same parsing and database logic as the
+ * GUI without any Swing dialogs, so ingestion and reports can be scripted,
+ * scheduled or benchmarked.
+ *
+ * <pre>
+ * java BatchMain &lt;operation&gt; --db &lt;database.accdb&gt; [options] [files or globs...]
+ *
+ * operations:
+ *   nics          write the NICS records in the given files to Patients
+ *   acks          mark the Patients rows acknowledged by the given ACK files
+ *   ack-report    list the acknowledged patients
+ *   nack-report   list the non-acknowledged, unresolved patients
+ *   watch         process NICS, ACK and NACK files as they land in --dir
+ *
+ * options:
+ *   --db &lt;path&gt;        the MS Access database to use (required)
+ *   --out &lt;path&gt;       write the report or summary to a file instead of stdout
+ *   --threads &lt;n&gt;      how many files to parse at once
+ *   --batch-size &lt;n&gt;   rows per Patients insert
+ *   --mode &lt;mode&gt;      what nics does with records already in Patients:
+ *                      append, skip (the default) or update
+ *   --ledger &lt;path&gt;    the ledger of processed files (default ~/.nics-data-linker-ledger)
+ *   --force            process files the ledger says were already processed
+ *   --metrics          print file, message and row counts and per-stage times at the end
+ *   --dir &lt;path&gt;       the directory to watch
+ *   --settle &lt;ms&gt;      how long a new file must be unchanged before it is read
+ * </pre>
+ *
+ * Globs such as <code>/drops/*.hl7</code> are expanded in their directory and
+ * sorted by name so runs are repeatable. Files that nics or acks has already
+ * written to the same database are skipped without being read unless --force
+ * is given. An ACK file only counts as written once one of its IDs has
+ * matched a Patients row.
+ *
+ * Metrics can also be switched on with <code>-Dnics.metrics=true</code> and
+ * watched over JMX, which is most useful with watch.
+ *
+ * Exit status is 0 on success, 1 if some input files could not be read,
+ * 2 for bad arguments and 3 if the operation failed.
+ */
+public class BatchMain {
+
+	public static final int EXIT_OK = 0;
+	public static final int EXIT_PARTIAL = 1;
+	public static final int EXIT_USAGE = 2;
+	public static final int EXIT_FAILED = 3;
+
+	// how long shutdown waits for watch to finish the file it is processing
+	private static final long SHUTDOWN_WAIT_MILLIS = 30000;
+
+	private String operation;
+	private String dbPath;
+	private String outPath;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int batchSize = -1;
+	private PatientWriter.Mode writeMode;
+	private String ledgerPath;
+	private boolean force;
+	private boolean metrics;
+	private String watchDir;
+	private long settleMillis = IngestDaemon.DEFAULT_SETTLE_MILLIS;
+	private final List<String> inputs = new ArrayList<String>();
+
+	/**
+	 * Runs a single operation and exits with its status code.
+	 * @param args - the operation, options and input files
+	 */
+	public static void main(String[] args){
+		System.setProperty("java.awt.headless", "true");
+		PipelineMetrics.register();
+		System.exit(run(args, System.out, System.err));
+	}
+
+	/**
+	 * Runs a single operation without exiting the JVM.
+	 * @param args - the operation, options and input files
+	 * @param out - where reports and summaries go when no --out file is given
+	 * @param err - where errors go
+	 * @return the exit status
+	 */
+	public static int run(String[] args, PrintStream out, PrintStream err){
+		BatchMain batch = new BatchMain();
+		String problem = batch.parse(args);
+		if(problem != null){
+			err.println(problem);
+			usage(err);
+			return EXIT_USAGE;
+		}
+		PrintWriter writer = null;
+		try{
+			if(batch.outPath != null){
+				writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(batch.outPath)));
+			}else{
+				writer = new PrintWriter(out);
+			}
+			if(batch.metrics){
+				PipelineMetrics.getInstance().setEnabled(true);
+			}
+			PipelineMetrics.Snapshot before = PipelineMetrics.getInstance().snapshot();
+			int status = batch.execute(writer, err);
+			if(PipelineMetrics.active() && !batch.isWatch()){
+				writer.println(PipelineMetrics.getInstance().snapshot().since(before));
+			}
+			return status;
+		}catch(IOException e){
+			err.println("Failed: " + e.getMessage());
+			return EXIT_FAILED;
+		}catch(RuntimeException e){
+			err.println("Failed: " + e);
+			return EXIT_FAILED;
+		}finally{
+			try{
+				AccessController.getInstance().closeSession();
+			}catch(IOException e){
+				err.println("Could not properly close database: " + e.getMessage());
+			}
+			if(writer != null){
+				writer.flush();
+				if(batch.outPath != null){
+					writer.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the command line.
+	 * @return a description of the problem, or null if the arguments are usable
+	 */
+	private String parse(String[] args){
+		for(int i = 0; i < args.length; i++){
+			String arg = args[i];
+			if(arg.equals("--force")){
+				force = true;
+			}else if(arg.equals("--metrics")){
+				metrics = true;
+			}else if(arg.startsWith("--")){
+				if(i + 1 >= args.length){
+					return "Missing value for " + arg;
+				}
+				String value = args[++i];
+				if(arg.equals("--db")){
+					dbPath = value;
+				}else if(arg.equals("--out")){
+					outPath = value;
+				}else if(arg.equals("--mode")){
+					try{
+						writeMode = PatientWriter.Mode.valueOf(value.toUpperCase());
+					}catch(IllegalArgumentException e){
+						return "Unknown mode " + value + ", expected append, skip or update";
+					}
+				}else if(arg.equals("--ledger")){
+					ledgerPath = value;
+				}else if(arg.equals("--dir")){
+					watchDir = value;
+				}else if(arg.equals("--settle")){
+					try{
+						settleMillis = Long.parseLong(value);
+					}catch(NumberFormatException e){
+						return "Not a number for " + arg + ": " + value;
+					}
+				}else if(arg.equals("--threads") || arg.equals("--batch-size")){
+					int n;
+					try{
+						n = Integer.parseInt(value);
+					}catch(NumberFormatException e){
+						return "Not a number for " + arg + ": " + value;
+					}
+					if(n < 1){
+						return arg + " must be at least 1";
+					}
+					if(arg.equals("--threads")){
+						threads = n;
+					}else{
+						batchSize = n;
+					}
+				}else{
+					return "Unknown option " + arg;
+				}
+			}else if(operation == null){
+				operation = arg;
+			}else{
+				inputs.add(arg);
+			}
+		}
+		if(operation == null){
+			return "No operation given";
+		}
+		if(!isIngest() && !isReport() && !isWatch()){
+			return "Unknown operation " + operation;
+		}
+		if(isWatch() && watchDir == null){
+			return "--dir is required for watch";
+		}
+		if(dbPath == null){
+			return "--db is required";
+		}
+		if(isIngest() && inputs.isEmpty()){
+			return "No input files given for " + operation;
+		}
+		return null;
+	}
+
+	private boolean isIngest(){
+		return operation.equals("nics") || operation.equals("acks");
+	}
+
+	private boolean isWatch(){
+		return operation.equals("watch");
+	}
+
+	private boolean isReport(){
+		return operation.equals("ack-report") || operation.equals("nack-report");
+	}
+
+	/**
+	 * Performs the parsed operation.
+	 */
+	private int execute(PrintWriter out, PrintStream err) throws IOException{
+		AccessController ac = AccessController.getInstance();
+		if(batchSize > 0){
+			ac.setBatchSize(batchSize);
+		}
+		if(writeMode != null){
+			ac.setWriteMode(writeMode);
+		}
+		if(ledgerPath != null){
+			ac.setLedger(new FileLedger(new File(ledgerPath)));
+		}
+		if(isWatch()){
+			final IngestDaemon daemon = new IngestDaemon(Paths.get(watchDir), dbPath, settleMillis, out);
+			final Thread watcher = new Thread(daemon, "nics-watch");
+			// let the file in progress finish and the database close before the JVM exits
+			Runtime.getRuntime().addShutdownHook(new Thread(){
+				@Override
+				public void run(){
+					daemon.stop();
+					try{
+						watcher.join(SHUTDOWN_WAIT_MILLIS);
+					}catch(InterruptedException e){
+					}
+				}
+			});
+			watcher.start();
+			try{
+				watcher.join();
+			}catch(InterruptedException e){
+				daemon.stop();
+				Thread.currentThread().interrupt();
+				err.println("Interrupted");
+				return EXIT_FAILED;
+			}
+			return EXIT_OK;
+		}
+		if(isReport()){
+			ac.connect(dbPath);
+			try{
+				List<PatientRecord> rows = operation.equals("ack-report") ? ac.getAcknowledgedReport() : ac.getNonAcknowledgedReport();
+				for(int i = 0; i < rows.size(); i++){
+					out.println(rows.get(i));
+				}
+			}finally{
+				ac.disconnect();
+			}
+			return EXIT_OK;
+		}
+
+		String[] files = expand(inputs);
+		if(files.length == 0){
+			err.println("No input files matched");
+			return EXIT_FAILED;
+		}
+		MessageType type = operation.equals("nics") ? MessageType.NICS : MessageType.ACK;
+		if(!force){
+			String[] unprocessed = ac.getLedger().unprocessed(files, type, dbPath);
+			if(unprocessed.length < files.length){
+				out.println("Already processed, skipped: " + (files.length - unprocessed.length) + " of " + files.length);
+			}
+			if(unprocessed.length == 0){
+				return EXIT_OK;
+			}
+			files = unprocessed;
+		}
+		// NICS files are written as they are parsed; ACK IDs are all needed before the scan
+		ParallelIngestor ingestor = new ParallelIngestor(threads);
+		PatientWriter.Result written = new PatientWriter.Result();
+		Map<String, ArrayList<String>> ackIdsByFile = new LinkedHashMap<String, ArrayList<String>>();
+		List<String> recorded;
+		ParallelIngestor.Result parsed;
+		ac.connect(dbPath);
+		try{
+			if(type == MessageType.NICS){
+				parsed = ingestor.stream(files, type, ac.nicsWriter(written, ProgressListener.NONE), ProgressListener.NONE);
+			}else{
+				parsed = ingestor.stream(files, type, ParallelIngestor.collectByFile(ackIdsByFile), ProgressListener.NONE);
+			}
+			if(!parsed.getFailures().isEmpty()){
+				err.print("Skipped unreadable files:\n" + parsed.describeFailures());
+			}
+			out.println("Files processed: " + parsed.getFilesProcessed() + " of " + files.length);
+			if(type == MessageType.NICS){
+				out.println(written);
+				recorded = parsed.getProcessedFiles();
+			}else{
+				Set<String> acks = new LinkedHashSet<String>();
+				for(ArrayList<String> ids : ackIdsByFile.values()){
+					acks.addAll(ids);
+				}
+				out.println("ACK IDs read: " + acks.size());
+				AckReconciler.Result result = ac.reconcileAcks(new ArrayList<String>(acks));
+				out.println(result);
+				// a file that matched nothing is read again next time, once its patients are in
+				recorded = result.filesMatched(ackIdsByFile);
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			err.println("Interrupted");
+			return EXIT_FAILED;
+		}finally{
+			ac.disconnect();
+		}
+		ac.getLedger().record(recorded, type, dbPath);
+		return parsed.getFailures().isEmpty() ? EXIT_OK : EXIT_PARTIAL;
+	}
+
+	/**
+	 * Expands any globs in the inputs. Plain paths are passed through as given.
+	 * @param inputs - file paths and globs
+	 * @return the matching file paths
+	 * @throws IOException if a glob's directory cannot be listed
+	 */
+	static String[] expand(List<String> inputs) throws IOException{
+		List<String> files = new ArrayList<String>();
+		for(String input : inputs){
+			if(!isGlob(input)){
+				files.add(input);
+				continue;
+			}
+			File glob = new File(input);
+			Path dir = glob.getParentFile() == null ? Paths.get(".") : glob.getParentFile().toPath();
+			List<String> matched = new ArrayList<String>();
+			DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob.getName());
+			try{
+				for(Path path : stream){
+					if(Files.isRegularFile(path)){
+						matched.add(path.toString());
+					}
+				}
+			}finally{
+				stream.close();
+			}
+			Collections.sort(matched);
+			files.addAll(matched);
+		}
+		return files.toArray(new String[files.size()]);
+	}
+
+	private static boolean isGlob(String input){
+		return input.indexOf('*') >= 0 || input.indexOf('?') >= 0 || input.indexOf('[') >= 0 || input.indexOf('{') >= 0;
+	}
+
+	private static void usage(PrintStream err){
+		err.println("Usage: java BatchMain <nics|acks|ack-report|nack-report> --db <database.accdb>");
+		err.println("         [--out <file>] [--threads <n>] [--batch-size <n>] [--mode <append|skip|update>]");
+		err.println("         [--ledger <file>] [--force] [--metrics] [files or globs...]");
+		err.println("       java BatchMain watch --db <database.accdb> --dir <directory> [--settle <ms>] [--metrics]");
+	}
+}
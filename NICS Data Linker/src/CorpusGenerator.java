@@ -0,0 +1,359 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.healthmarketscience.jackcess.Column;
+import com.healthmarketscience.jackcess.ColumnBuilder;
+import com.healthmarketscience.jackcess.DataType;
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.IndexBuilder;
+import com.healthmarketscience.jackcess.Table;
+import com.healthmarketscience.jackcess.TableBuilder;
+
+/**
+ * Writes synthetic NICS, ACK and NACK files in the same <code>CS-ADT.1.</code>
+ * shape that {@link FileReader} parses, and builds a Patients database to go
+ * with them, for load tests at realistic scale. Nothing here comes from real
+ * patients: names are drawn from short fixed lists and every patient number
+ * maps to a Meditech ID of the same width, so no ID is contained in another
+ * and ACK matching behaves as it does on production data.
+ *
+ * The same seed always produces the same files and rows.
+ *
+ * <pre>
+ * java CorpusGenerator --dir &lt;directory&gt; [--rows &lt;n&gt;] [--admissions &lt;n&gt;] [--per-file &lt;n&gt;] [--seed &lt;n&gt;]
+ * </pre>
+ */
+public class CorpusGenerator {
+
+	public static final int DEFAULT_MESSAGES_PER_FILE = 1000;
+	public static final double DEFAULT_UPDATE_RATE = 0.25;
+	public static final double DEFAULT_ACK_RATE = 0.85;
+	public static final double DEFAULT_NACK_RATE = 0.05;
+
+	private static final int INSERT_BATCH_SIZE = 10000;
+	private static final String[] LAST_NAMES = {"SMITH", "JOHNSON", "WILLIAMS", "BROWN", "JONES", "GARCIA", "MILLER", "DAVIS",
+			"RODRIGUEZ", "MARTINEZ", "HERNANDEZ", "LOPEZ", "GONZALEZ", "WILSON", "ANDERSON", "THOMAS", "TAYLOR", "MOORE",
+			"JACKSON", "MARTIN", "LEE", "THOMPSON", "WHITE", "HARRIS", "CLARK", "LEWIS", "ROBINSON", "WALKER", "YOUNG", "ALLEN"};
+	private static final String[] FIRST_NAMES = {"JAMES", "MARY", "ROBERT", "PATRICIA", "JOHN", "JENNIFER", "MICHAEL", "LINDA",
+			"DAVID", "ELIZABETH", "WILLIAM", "BARBARA", "RICHARD", "SUSAN", "JOSEPH", "JESSICA", "THOMAS", "SARAH", "CHARLES", "KAREN"};
+
+	private final long seed;
+	private int messagesPerFile = DEFAULT_MESSAGES_PER_FILE;
+	private double updateRate = DEFAULT_UPDATE_RATE;
+	private double ackRate = DEFAULT_ACK_RATE;
+	private double nackRate = DEFAULT_NACK_RATE;
+
+	/**
+	 * @param seed - picks the names, codes and ACK outcomes
+	 */
+	public CorpusGenerator(long seed){
+		this.seed = seed;
+	}
+
+	/**
+	 * Generates a corpus from the command line.
+	 * @param args - see the class description
+	 */
+	public static void main(String[] args){
+		File dir = null;
+		int rows = 100000;
+		int admissions = 10000;
+		CorpusGenerator generator;
+		long seed = 1;
+		int perFile = DEFAULT_MESSAGES_PER_FILE;
+		try{
+			for(int i = 0; i + 1 < args.length; i += 2){
+				if(args[i].equals("--dir")){
+					dir = new File(args[i+1]);
+				}else if(args[i].equals("--rows")){
+					rows = Integer.parseInt(args[i+1]);
+				}else if(args[i].equals("--admissions")){
+					admissions = Integer.parseInt(args[i+1]);
+				}else if(args[i].equals("--per-file")){
+					perFile = Integer.parseInt(args[i+1]);
+				}else if(args[i].equals("--seed")){
+					seed = Long.parseLong(args[i+1]);
+				}else{
+					throw new IllegalArgumentException("Unknown option " + args[i]);
+				}
+			}
+			if(dir == null || args.length % 2 != 0){
+				throw new IllegalArgumentException("--dir is required");
+			}
+			generator = new CorpusGenerator(seed);
+			generator.setMessagesPerFile(perFile);
+		}catch(IllegalArgumentException e){
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java CorpusGenerator --dir <directory> [--rows <n>] [--admissions <n>] [--per-file <n>] [--seed <n>]");
+			System.exit(BatchMain.EXIT_USAGE);
+			return;
+		}
+		try{
+			dir.mkdirs();
+			generator.createDatabase(new File(dir, "Patients.accdb"), rows);
+			List<String> nics = generator.writeNics(dir, rows, admissions);
+			List<String> acks = generator.writeAcks(dir, 0, rows + admissions);
+			System.out.println("Patients rows: " + rows + "\nNICS files: " + nics.size() + "\nACK files: " + acks.size());
+		}catch(IOException e){
+			System.err.println("Failed: " + e.getMessage());
+			System.exit(BatchMain.EXIT_FAILED);
+		}
+	}
+
+	/**
+	 * @param messagesPerFile - how many messages go in each generated file
+	 */
+	public void setMessagesPerFile(int messagesPerFile){
+		if(messagesPerFile < 1){
+			throw new IllegalArgumentException("Messages per file must be at least 1");
+		}
+		this.messagesPerFile = messagesPerFile;
+	}
+
+	/**
+	 * @param updateRate - the share of admissions that are followed by an A08 update
+	 */
+	public void setUpdateRate(double updateRate){
+		this.updateRate = updateRate;
+	}
+
+	/**
+	 * Sets how a patient's submission fares with the state. A patient that is
+	 * neither acknowledged nor rejected is still outstanding.
+	 * @param ackRate - the share of patients acknowledged
+	 * @param nackRate - the share of patients rejected with an error
+	 */
+	public void setAckRates(double ackRate, double nackRate){
+		if(ackRate < 0 || nackRate < 0 || ackRate + nackRate > 1){
+			throw new IllegalArgumentException("ACK and NACK rates must add up to no more than 1");
+		}
+		this.ackRate = ackRate;
+		this.nackRate = nackRate;
+	}
+
+	/**
+	 * @param patient - a patient number
+	 * @return the patient's Meditech ID, always 9 characters long
+	 */
+	public static String meditechId(int patient){
+		return String.format("M%08d", patient);
+	}
+
+	/**
+	 * Creates a database holding a Patients table with the given number of
+	 * rows for patients 0 upwards, acknowledged and resolved at the configured
+	 * rates. Rows are added in large batches so even 10 million rows is a
+	 * matter of minutes rather than hours. An existing file is replaced.
+	 *
+	 * @param file - the .accdb file to create
+	 * @param rows - how many Patients rows to add
+	 * @throws IOException
+	 */
+	public void createDatabase(File file, int rows) throws IOException{
+		if(file.exists() && !file.delete()){
+			throw new IOException("Could not replace " + file);
+		}
+		Database db = DatabaseBuilder.create(Database.FileFormat.V2010, file);
+		try{
+			Table patients = createPatientsTable(db);
+			Random random = new Random(seed);
+			List<Object[]> batch = new ArrayList<Object[]>(INSERT_BATCH_SIZE);
+			for(int i = 0; i < rows; i++){
+				double outcome = outcome(i);
+				String acknowledged = outcome < ackRate ? "Yes" : "";
+				// only rejected patients are ever resolved by hand
+				String resolved = outcome >= ackRate && outcome < ackRate + nackRate && random.nextBoolean() ? "Yes" : "";
+				batch.add(new Object[]{Column.AUTO_NUMBER, name(random), meditechId(i), acknowledged,
+						random.nextDouble() < updateRate ? "A08" : "A04", timestamp(i), resolved});
+				if(batch.size() == INSERT_BATCH_SIZE){
+					patients.addRows(batch);
+					batch.clear();
+				}
+			}
+			if(!batch.isEmpty()){
+				patients.addRows(batch);
+			}
+		}finally{
+			db.close();
+		}
+	}
+
+	/**
+	 * Adds an empty Patients table laid out the way the application expects.
+	 * @param db - the database to add it to
+	 * @return the new table
+	 * @throws IOException
+	 */
+	public static Table createPatientsTable(Database db) throws IOException{
+		return new TableBuilder("Patients")
+				.addColumn(new ColumnBuilder("Patient_ID", DataType.LONG).setAutoNumber(true))
+				.addColumn(new ColumnBuilder("Patient_Name", DataType.TEXT))
+				.addColumn(new ColumnBuilder("Meditech_ID", DataType.TEXT))
+				.addColumn(new ColumnBuilder("Acknowledged", DataType.TEXT))
+				.addColumn(new ColumnBuilder("Admit_Update", DataType.TEXT))
+				.addColumn(new ColumnBuilder("Date/Time", DataType.TEXT))
+				.addColumn(new ColumnBuilder("Resolved", DataType.TEXT))
+				.addIndex(new IndexBuilder("Patient_ID").addColumns("Patient_ID").setPrimaryKey())
+				.addIndex(new IndexBuilder("Meditech_ID").addColumns("Meditech_ID"))
+				.toTable(db);
+	}
+
+	/**
+	 * Writes NICS files admitting the given range of patients, with some of
+	 * the admissions followed by an update.
+	 *
+	 * @param dir - where to write the files
+	 * @param firstPatient - the first patient number
+	 * @param patients - how many patients to admit
+	 * @return the files written, in order
+	 * @throws IOException
+	 */
+	public List<String> writeNics(File dir, int firstPatient, int patients) throws IOException{
+		Random random = new Random(seed + firstPatient);
+		List<String> files = new ArrayList<String>();
+		Writer out = null;
+		int inFile = 0;
+		try{
+			for(int i = firstPatient; i < firstPatient + patients; i++){
+				boolean update = random.nextDouble() < updateRate;
+				String name = name(random);
+				for(int m = 0; m < (update ? 2 : 1); m++){
+					if(out == null || inFile == messagesPerFile){
+						out = next(out, dir, "nics", files);
+						inFile = 0;
+					}
+					out.write(nicsMessage(meditechId(i), name, m == 0 ? "A04" : "A08"));
+					inFile++;
+				}
+			}
+		}finally{
+			if(out != null){
+				out.close();
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Writes ACK files answering the given range of patients the way the state
+	 * does: most are acknowledged, some rejected with an error, and the rest
+	 * not yet answered. ACKs and NACKs are mixed in the same files.
+	 *
+	 * @param dir - where to write the files
+	 * @param firstPatient - the first patient number
+	 * @param patients - how many patients to answer for
+	 * @return the files written, in order
+	 * @throws IOException
+	 */
+	public List<String> writeAcks(File dir, int firstPatient, int patients) throws IOException{
+		List<String> files = new ArrayList<String>();
+		Writer out = null;
+		int inFile = 0;
+		try{
+			for(int i = firstPatient; i < firstPatient + patients; i++){
+				double outcome = outcome(i);
+				if(outcome >= ackRate + nackRate){
+					continue;
+				}
+				if(out == null || inFile == messagesPerFile){
+					out = next(out, dir, "ack", files);
+					inFile = 0;
+				}
+				out.write(outcome < ackRate ? ackMessage(meditechId(i)) : nackMessage(meditechId(i)));
+				inFile++;
+			}
+		}finally{
+			if(out != null){
+				out.close();
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Writes one file holding only messages of the given type, one per patient.
+	 * @param file - the file to write
+	 * @param type - the kind of message
+	 * @param firstPatient - the first patient number
+	 * @param patients - how many messages to write
+	 * @throws IOException
+	 */
+	public void writeMessages(File file, MessageType type, int firstPatient, int patients) throws IOException{
+		Random random = new Random(seed + firstPatient);
+		Writer out = open(file);
+		try{
+			for(int i = firstPatient; i < firstPatient + patients; i++){
+				String id = meditechId(i);
+				if(type == MessageType.NICS){
+					out.write(nicsMessage(id, name(random), random.nextDouble() < updateRate ? "A08" : "A04"));
+				}else if(type == MessageType.ACK){
+					out.write(ackMessage(id));
+				}else{
+					out.write(nackMessage(id));
+				}
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	static String nicsMessage(String meditechId, String name, String code){
+		return "MSH|^~\\&|MEDITECH|GGH|NICS|NYS|20130820||ADT^" + code + "|CS-ADT.1." + meditechId + "|T|2.3||||AL|NE\r"
+				+ "EVN|" + code + "|20130820\rPID|1||" + meditechId + "||" + name + "||19700101|U\r\n";
+	}
+
+	static String ackMessage(String meditechId){
+		return "MSH|^~\\&|NYS|NICS|MEDITECH|GGH|20130821||ACK^A04|CS-ADT.1." + meditechId + "|T|2.3\rMSA|AA|" + meditechId + "\r\n";
+	}
+
+	static String nackMessage(String meditechId){
+		return "MSH|^~\\&|NYS|NICS|MEDITECH|GGH|20130821||ACK^A04|CS-ADT.1." + meditechId + " ERR|Invalid field\rMSA|AE|" + meditechId + "\rERR|PID^1^8\r\n";
+	}
+
+	/**
+	 * Draws where a patient stands with the state from the seed and the patient
+	 * number alone, so the database rows and the ACK files agree however they
+	 * are split up.
+	 * @return a value from 0 inclusive to 1 exclusive
+	 */
+	private double outcome(int patient){
+		// SplitMix64 finaliser
+		long z = seed + (patient + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (z >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * @return a name in HL7 LAST^FIRST^MIDDLE form; the lists hold no name containing "ERR"
+	 */
+	private static String name(Random random){
+		return LAST_NAMES[random.nextInt(LAST_NAMES.length)] + "^" + FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + "^" + (char) ('A' + random.nextInt(26));
+	}
+
+	private static String timestamp(int row){
+		return (1 + row % 12) + "/" + (1 + row % 28) + "/13 " + (1 + row % 12) + ":" + String.format("%02d", row % 60) + " PM";
+	}
+
+	private static Writer next(Writer current, File dir, String prefix, List<String> files) throws IOException{
+		if(current != null){
+			current.close();
+		}
+		File file = new File(dir, String.format("%s-%05d.hl7", prefix, files.size()));
+		files.add(file.getPath());
+		return open(file);
+	}
+
+	private static Writer open(File file) throws IOException{
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "US-ASCII"), 64 * 1024);
+	}
+}
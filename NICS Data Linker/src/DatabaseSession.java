@@ -0,0 +1,172 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.healthmarketscience.jackcess.Column;
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.Index;
+import com.healthmarketscience.jackcess.Table;
+
+/**
+ * Keeps an MS Access database open between actions so that back to back
+ * operations do not each pay for re-reading the file header, the system
+ * catalog and the table definitions. Table, column and index handles are
+ * cached for as long as the database stays open.
+ *
+ * The database is reopened only when a different file is asked for or when
+ * the file's modification time no longer matches the one recorded at the last
+ * flush point, which means something other than this session changed it.
+ * Callers should call {@link #flush()} once they finish a unit of work so the
+ * session's own writes are not mistaken for outside changes.
+ */
+public class DatabaseSession {
+
+	private File file;
+	private Database db;
+	private long stamp;
+	private long generation;
+	private final Map<String, Table> tables = new HashMap<String, Table>();
+	private final Map<String, Column> columns = new HashMap<String, Column>();
+	private final Map<String, Index> indexes = new HashMap<String, Index>();
+
+	/**
+	 * Returns the open database for the given file, opening or reopening it only
+	 * when needed.
+	 * @param filePath - the file path to the MS Access database
+	 * @return the open database
+	 * @throws IOException if the database cannot be opened
+	 */
+	public synchronized Database open(String filePath) throws IOException{
+		File requested = new File(filePath).getCanonicalFile();
+		if(db != null && requested.equals(file) && requested.lastModified() == stamp){
+			return db;
+		}
+		close();
+		db = DatabaseBuilder.open(requested);
+		file = requested;
+		stamp = requested.lastModified();
+		generation++;
+		return db;
+	}
+
+	/**
+	 * Records that this session changed the data, so anything derived from the
+	 * previous contents is out of date.
+	 */
+	public synchronized void markModified(){
+		generation++;
+	}
+
+	/**
+	 * @return a number that changes whenever the database is reopened or marked modified
+	 */
+	public synchronized long getGeneration(){
+		return generation;
+	}
+
+	/**
+	 * @return true if a database is currently open
+	 */
+	public synchronized boolean isOpen(){
+		return db != null;
+	}
+
+	/**
+	 * @return the open database
+	 * @throws IOException if no database is open
+	 */
+	public synchronized Database database() throws IOException{
+		if(db == null){
+			throw new IOException("No database is open");
+		}
+		return db;
+	}
+
+	/**
+	 * @param name - the table name
+	 * @return the cached table handle
+	 * @throws IOException if the table does not exist or cannot be read
+	 */
+	public synchronized Table table(String name) throws IOException{
+		Table table = tables.get(name);
+		if(table == null){
+			table = database().getTable(name);
+			if(table == null){
+				throw new IOException("Could not find the " + name + " table");
+			}
+			tables.put(name, table);
+		}
+		return table;
+	}
+
+	/**
+	 * @param tableName - the table the column belongs to
+	 * @param columnName - the column name
+	 * @return the cached column handle
+	 * @throws IOException if the table cannot be read or does not have the column
+	 */
+	public synchronized Column column(String tableName, String columnName) throws IOException{
+		String key = tableName + "." + columnName;
+		Column column = columns.get(key);
+		if(column == null){
+			try{
+				column = table(tableName).getColumn(columnName);
+			}catch(IllegalArgumentException e){
+				throw new IOException("The " + tableName + " table has no " + columnName + " column", e);
+			}
+			columns.put(key, column);
+		}
+		return column;
+	}
+
+	/**
+	 * @param tableName - the table the index belongs to
+	 * @param indexName - the index name
+	 * @return the cached index handle, or null if the table has no such index
+	 * @throws IOException if the table cannot be read
+	 */
+	public synchronized Index index(String tableName, String indexName) throws IOException{
+		String key = tableName + "." + indexName;
+		if(indexes.containsKey(key)){
+			return indexes.get(key);
+		}
+		Index index;
+		try{
+			index = table(tableName).getIndex(indexName);
+		}catch(IllegalArgumentException e){
+			index = null;
+		}
+		indexes.put(key, index);
+		return index;
+	}
+
+	/**
+	 * Flush point. Writes any pending changes to disk and records the file's new
+	 * modification time as belonging to this session.
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException{
+		if(db != null){
+			db.flush();
+			stamp = file.lastModified();
+		}
+	}
+
+	/**
+	 * Closes the database and forgets every cached handle.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException{
+		tables.clear();
+		columns.clear();
+		indexes.clear();
+		if(db != null){
+			Database open = db;
+			db = null;
+			file = null;
+			open.close();
+		}
+	}
+}
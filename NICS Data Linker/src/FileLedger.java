@@ -0,0 +1,260 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Remembers which NICS and ACK files have already been written to which
+ * database so that reselecting a whole directory only reads the new files.
+ * Every entry names the database by its canonical path, so one ledger serves
+ * any number of databases and a file written to one is still new to another.
+ * A file counts as processed when the ledger has the same path, size and
+ * modification time for it, which is checked without opening the file. When
+ * only the modification time differs, or the file has been copied to a new
+ * path, a CRC-32 of the contents is compared with the recorded files of the
+ * same size before deciding.
+ *
+ * The ledger is a plain text file that is only ever appended to, and only by
+ * {@link #record(List, MessageType, String)}; the last line for a path and
+ * database wins. Lines from before the database was recorded are ignored, so
+ * those files are offered once more.
+ */
+public class FileLedger {
+
+	private static final String HEADER = "# NICS Data Linker processed files: type, size, modified, crc32, database, path";
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	// recorded files by database and path
+	private final Map<String, Entry> byPath = new HashMap<String, Entry>();
+	// recorded files by size, to find moved or touched copies
+	private final Map<Long, List<Entry>> bySize = new HashMap<Long, List<Entry>>();
+	private boolean loaded;
+
+	/**
+	 * @param file - where the ledger is kept; it is created on the first record
+	 */
+	public FileLedger(File file){
+		this.file = file;
+	}
+
+	/**
+	 * @return the ledger kept in the user's home directory, shared by every database
+	 */
+	public static File defaultFile(){
+		return new File(System.getProperty("user.home"), ".nics-data-linker-ledger");
+	}
+
+	/**
+	 * @return the file the ledger is kept in
+	 */
+	public File getFile(){
+		return file;
+	}
+
+	/**
+	 * Picks out the files that have not been processed as the given type into
+	 * the given database.
+	 * @param filePaths - the selected files
+	 * @param type - what the files are being processed as
+	 * @param database - the database they are being written to
+	 * @return the files still to process, in the order given
+	 * @throws IOException if the ledger cannot be read
+	 */
+	public synchronized String[] unprocessed(String[] filePaths, MessageType type, String database) throws IOException{
+		List<String> remaining = new ArrayList<String>(filePaths.length);
+		for(String filePath : filePaths){
+			if(!isProcessed(filePath, type, database)){
+				remaining.add(filePath);
+			}
+		}
+		return remaining.toArray(new String[remaining.size()]);
+	}
+
+	/**
+	 * Checks the ledger without changing it.
+	 * @param filePath - the file to check
+	 * @param type - what the file is being processed as
+	 * @param database - the database it is being written to
+	 * @return true if the ledger has this file, or an identical copy of it, as processed into the database
+	 * @throws IOException if the ledger or the file cannot be read
+	 */
+	public synchronized boolean isProcessed(String filePath, MessageType type, String database) throws IOException{
+		load();
+		File f = new File(filePath).getCanonicalFile();
+		if(!f.isFile()){
+			return false;
+		}
+		String db = canonical(database);
+		long size = f.length();
+		long modified = f.lastModified();
+		Entry known = byPath.get(key(db, f.getPath()));
+		if(known != null && known.type == type && known.size == size && known.modified == modified){
+			return true;
+		}
+		List<Entry> sameSize = bySize.get(Long.valueOf(size));
+		if(sameSize == null){
+			return false;
+		}
+		long crc = -1;
+		for(Entry entry : sameSize){
+			if(entry.type != type || !entry.database.equals(db)){
+				continue;
+			}
+			if(crc == -1){
+				crc = crc32(f);
+			}
+			if(entry.crc == crc){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Records files as processed. Call once their data is safely in the database.
+	 * @param filePaths - the files that were processed
+	 * @param type - what they were processed as
+	 * @param database - the database they were written to
+	 * @throws IOException if a file or the ledger cannot be read or written
+	 */
+	public synchronized void record(List<String> filePaths, MessageType type, String database) throws IOException{
+		load();
+		String db = canonical(database);
+		for(String filePath : filePaths){
+			File f = new File(filePath).getCanonicalFile();
+			if(f.isFile()){
+				append(new Entry(type, f.length(), f.lastModified(), crc32(f), db, f.getPath()));
+			}
+		}
+	}
+
+	private static String canonical(String database) throws IOException{
+		return new File(database).getCanonicalPath();
+	}
+
+	private static String key(String database, String path){
+		// a tab cannot be part of either, since it separates the fields of a line
+		return database + "\t" + path;
+	}
+
+	private void load() throws IOException{
+		if(loaded){
+			return;
+		}
+		loaded = true;
+		BufferedReader in;
+		try{
+			in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		}catch(FileNotFoundException e){
+			return;
+		}
+		try{
+			String line;
+			while((line = in.readLine()) != null){
+				Entry entry = Entry.parse(line);
+				if(entry != null){
+					remember(entry);
+				}
+			}
+		}finally{
+			in.close();
+		}
+	}
+
+	private void append(Entry entry) throws IOException{
+		boolean isNew = !file.exists();
+		Writer out = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+		try{
+			if(isNew){
+				out.write(HEADER + "\n");
+			}
+			out.write(entry + "\n");
+		}finally{
+			out.close();
+		}
+		remember(entry);
+	}
+
+	private void remember(Entry entry){
+		byPath.put(key(entry.database, entry.path), entry);
+		Long size = Long.valueOf(entry.size);
+		List<Entry> sameSize = bySize.get(size);
+		if(sameSize == null){
+			sameSize = new ArrayList<Entry>(1);
+			bySize.put(size, sameSize);
+		}
+		sameSize.add(entry);
+	}
+
+	static long crc32(File f) throws IOException{
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[READ_BUFFER_SIZE];
+		InputStream in = new FileInputStream(f);
+		try{
+			int n;
+			while((n = in.read(buffer)) > 0){
+				crc.update(buffer, 0, n);
+			}
+		}finally{
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * One processed file as recorded in the ledger.
+	 */
+	private static class Entry {
+		final MessageType type;
+		final long size;
+		final long modified;
+		final long crc;
+		final String database;
+		final String path;
+
+		Entry(MessageType type, long size, long modified, long crc, String database, String path){
+			this.type = type;
+			this.size = size;
+			this.modified = modified;
+			this.crc = crc;
+			this.database = database;
+			this.path = path;
+		}
+
+		/**
+		 * @return the entry on the line, or null for the header, a damaged line or
+		 * a line from before the database was recorded
+		 */
+		static Entry parse(String line){
+			if(line.startsWith("#")){
+				return null;
+			}
+			String[] fields = line.split("\t", 6);
+			if(fields.length < 6){
+				return null;
+			}
+			try{
+				return new Entry(MessageType.valueOf(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]), fields[4], fields[5]);
+			}catch(IllegalArgumentException e){
+				return null;
+			}
+		}
+
+		@Override
+		public String toString(){
+			return type.name() + "\t" + size + "\t" + modified + "\t" + crc + "\t" + database + "\t" + path;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one buffer read from an HL7 file, so slow file
+ * reads can be lined up with disk and network activity in a recording. Only
+ * the file's name is recorded, never its contents.
+ */
+@Name("nics.FileRead")
+@Label("HL7 File Read")
+@Category({"NICS Data Linker", "Files"})
+@Description("A buffer of characters read from a NICS, ACK or NACK file")
+public class FileReadEvent extends Event {
+
+	@Label("File")
+	String file;
+
+	@Label("Characters")
+	@DataAmount(DataAmount.BYTES)
+	long characters;
+}
@@ -1,18 +1,25 @@
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * This is a wrapper class that creates a file reader that is optimized
- * for NICS, NACK, and ACK file processing through regular expressions.
+ * for NICS, NACK, and ACK file processing through a single pass tokenizer.
  * 
  * @author Ryan Robert Castner - ryancastner@msn.com
  * @version 1.0 - 8/20/2013
  */
 public class FileReader {
+	
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	
 	/*
 	 * Default Constructor
 	 */
@@ -22,31 +29,40 @@ public class FileReader {
 	
 	/**
 	 * Method returns an ArrayList of all the NICS data. The data is in the form
-	 * ADT Unique ID (Meditech ID), Name, Update/Admit Code. Regular expressions
-	 * are used to extract the data from the files and then string manipulation
-	 * is used to put the information in a more presentable form. Because this is
+	 * ADT Unique ID (Meditech ID), Name, Update/Admit Code. An {@link HL7Tokenizer}
+	 * is used to extract the data from the files in a single pass and then string
+	 * manipulation is used to put the information in a more presentable form. Because this is
 	 * a flat array, a modulo counter needs to be used to parse through the data.
 	 * 
 	 * @param data - the text to filter through
 	 * @return nicsData - ArrayList of data in a 3 mod form
 	 */
 	public ArrayList<String> getNicsData(ArrayList<String> data){
+		return getNicsData(data.iterator());
+	}
+	
+	/**
+	 * Streaming form of {@link #getNicsData(ArrayList)} that consumes one message
+	 * at a time, such as from an {@link HL7MessageReader}.
+	 * 
+	 * @param messages - the messages to filter through
+	 * @return nicsData - ArrayList of data in a 3 mod form
+	 */
+	public ArrayList<String> getNicsData(Iterator<String> messages){
 		ArrayList<String> nicsData = new ArrayList<String>();
-		if(data.isEmpty()){
-			return nicsData;
-		}
-		for(int i = 0; i < data.size(); i++){
-			//Splitting a NACK, ACK or PRENIC
-			String[] array = data.get(i).split("CS-ADT.1.");
-			if(data.get(i).contains("ADT^")){
-				String[] array2 = array[1].split("\\|T\\|");
-				nicsData.add(array2[0].trim());
-				String[] array3 = array[1].split("\\|");
-				String temp = array3[14].replace('^', ' ');
-				nicsData.add(temp.trim());
-				String[] array4 = array[0].split("ADT\\^");
-				String temp2 = array4[1].replace('|', ' ');
-				nicsData.add(temp2.trim());
+		HL7Tokenizer tokenizer = new HL7Tokenizer();
+		while(messages.hasNext()){
+			//Tokenizing a NACK, ACK or PRENIC
+			if(tokenizer.reset(messages.next()) && tokenizer.contains("ADT^")){
+				String name = tokenizer.patientName();
+				String code = tokenizer.eventCode();
+				if(name == null || code == null){
+					// malformed message, the name field or event code is missing
+					continue;
+				}
+				nicsData.add(tokenizer.meditechId());
+				nicsData.add(name);
+				nicsData.add(code);
 			}
 		}		
 		return nicsData;
@@ -60,16 +76,23 @@ public class FileReader {
 	 * @return ArrayList of Acknowledged Meditech ID numbers
 	 */
 	public ArrayList<String> getAckData(ArrayList<String> data){
+		return getAckData(data.iterator());
+	}
+	
+	/**
+	 * Streaming form of {@link #getAckData(ArrayList)} that consumes one message
+	 * at a time, such as from an {@link HL7MessageReader}.
+	 * 
+	 * @param messages - the messages to filter through
+	 * @return ArrayList of Acknowledged Meditech ID numbers
+	 */
+	public ArrayList<String> getAckData(Iterator<String> messages){
 		ArrayList<String> ackData = new ArrayList<String>();
-		if(data.isEmpty()){
-			return ackData;
-		}
-		for(int i = 0; i < data.size(); i++){
-			//Splitting a NACK, ACK or PRENIC
-			String[] array = data.get(i).split("CS-ADT.1.");
-			if(!data.get(i).contains("ERR") && data.get(i).contains("ACK^")){
-				String[] array2 = array[1].split("\\|T\\|");
-				ackData.add(array2[0].trim());
+		HL7Tokenizer tokenizer = new HL7Tokenizer();
+		while(messages.hasNext()){
+			//Tokenizing a NACK, ACK or PRENIC
+			if(tokenizer.reset(messages.next()) && !tokenizer.contains("ERR") && tokenizer.contains("ACK^")){
+				ackData.add(tokenizer.meditechId());
 			}
 		}
 		
@@ -84,25 +107,139 @@ public class FileReader {
 	 * @return ArrayList of Not-Acknowledged Meditech ID numbers
 	 */
 	public ArrayList<String> getNackData(ArrayList<String> data){
+		return getNackData(data.iterator());
+	}
+	
+	/**
+	 * Streaming form of {@link #getNackData(ArrayList)} that consumes one message
+	 * at a time, such as from an {@link HL7MessageReader}.
+	 * 
+	 * @param messages - the messages to filter through
+	 * @return ArrayList of Not-Acknowledged Meditech ID numbers
+	 */
+	public ArrayList<String> getNackData(Iterator<String> messages){
 		ArrayList<String> nackData = new ArrayList<String>();
-		if(data.isEmpty()){
-			return nackData;
-		}
-		for(int i = 0; i < data.size(); i++){
-			//Splitting a NACK, ACK or PRENIC
-			String[] array = data.get(i).split("CS-ADT.1.");
-			if(data.get(i).contains("ERR")){
-				String[] array2 = array[1].split("ERR");
-				nackData.add(array2[0].trim());
+		HL7Tokenizer tokenizer = new HL7Tokenizer();
+		while(messages.hasNext()){
+			//Tokenizing a NACK, ACK or PRENIC
+			if(tokenizer.reset(messages.next()) && tokenizer.contains("ERR")){
+				nackData.add(tokenizer.nackId());
 			}
 		}
 		
 		return nackData;
 	}
 	
+	/**
+	 * Streams a single file and extracts one type of data from it. The file's
+	 * size, message count and the time spent reading and parsing it are
+	 * recorded in the {@link PipelineMetrics} and as a {@link MessageParseEvent}.
+	 * 
+	 * @param filePath - the file to read
+	 * @param type - the kind of data to extract
+	 * @return the extracted data
+	 * @throws IOException
+	 */
+	public ArrayList<String> extract(String filePath, MessageType type) throws IOException{
+		long start = PipelineMetrics.now();
+		MessageParseEvent event = new MessageParseEvent();
+		event.begin();
+		HL7MessageReader messages = openMessages(filePath);
+		try{
+			ArrayList<String> data = type.extract(this, messages);
+			parsed(filePath, messages, start, event, type.name(), records(type, data));
+			return data;
+		}catch(HL7MessageReader.HL7ReadException e){
+			throw e.getIOException();
+		}finally{
+			messages.close();
+		}
+	}
+	
+	/**
+	 * Streams a single file that may hold more than one kind of message and
+	 * extracts each message as the type {@link MessageType#classify(CharSequence)}
+	 * gives it, so a file of ACKs with a NACK at the front still yields its
+	 * ACKs. Messages of no known type are ignored. Recorded in the metrics
+	 * and as an event the same way as {@link #extract(String, MessageType)}.
+	 * 
+	 * @param filePath - the file to read
+	 * @return the extracted data of each type found in the file, empty if none was
+	 * @throws IOException
+	 */
+	public Map<MessageType, ArrayList<String>> extractByType(String filePath) throws IOException{
+		long start = PipelineMetrics.now();
+		MessageParseEvent event = new MessageParseEvent();
+		event.begin();
+		HL7MessageReader messages = openMessages(filePath);
+		try{
+			Map<MessageType, ArrayList<String>> data = new EnumMap<MessageType, ArrayList<String>>(MessageType.class);
+			while(messages.hasNext()){
+				String message = messages.next();
+				MessageType type = MessageType.classify(message);
+				if(type == null){
+					continue;
+				}
+				ArrayList<String> typeData = data.get(type);
+				if(typeData == null){
+					typeData = new ArrayList<String>();
+					data.put(type, typeData);
+				}
+				typeData.addAll(type.extract(this, Collections.singletonList(message).iterator()));
+			}
+			int records = 0;
+			for(Map.Entry<MessageType, ArrayList<String>> entry : data.entrySet()){
+				records += records(entry.getKey(), entry.getValue());
+			}
+			String types = data.keySet().toString();
+			parsed(filePath, messages, start, event, types.substring(1, types.length() - 1), records);
+			return data;
+		}catch(HL7MessageReader.HL7ReadException e){
+			throw e.getIOException();
+		}finally{
+			messages.close();
+		}
+	}
+	
+	private static int records(MessageType type, ArrayList<String> data){
+		return type == MessageType.NICS ? data.size() / 3 : data.size();
+	}
+	
+	/**
+	 * Records a file that has been streamed and parsed in the metrics and as a
+	 * {@link MessageParseEvent}.
+	 */
+	private static void parsed(String filePath, HL7MessageReader messages, long start, MessageParseEvent event, String type, int records){
+		if(event.shouldCommit()){
+			event.file = new File(filePath).getName();
+			event.type = type;
+			event.messages = messages.getMessageCount();
+			event.records = records;
+			event.commit();
+		}
+		if(PipelineMetrics.active()){
+			long read = messages.getReadNanos();
+			long parse = Math.max(0, PipelineMetrics.since(start) - read);
+			PipelineMetrics.fileParsed(new File(filePath).length(), messages.getMessageCount(), read, parse);
+		}
+	}
+	
+	/**
+	 * Opens a file as a stream of HL7 messages. Only the message currently being
+	 * read is held in memory, so this should be preferred over {@link #readFile(String[])}
+	 * for large batch files. The caller is responsible for closing the reader.
+	 * 
+	 * @param filePath - the file to stream
+	 * @return reader that iterates over the messages in the file
+	 * @throws IOException
+	 */
+	public HL7MessageReader openMessages(String filePath) throws IOException{
+		return new HL7MessageReader(filePath);
+	}
+	
 	/**
 	 * Parses through files and grabs all the characters from the files and adds them
-	 * as strings into an array list.
+	 * as strings into an array list. Characters are decoded in bulk buffers.
 	 * 
 	 * @param filePaths - the string array of file paths to parse through
 	 * @return data - the list of character data in string form with each index representing a file
@@ -112,33 +249,22 @@ public class FileReader {
 		ArrayList<String> data = new ArrayList<String>();
 		InputStream is = null; 
 	    InputStreamReader isr = null;
-	    BufferedReader br = null;
-	    String filePath = "";
+	    char[] buffer = new char[READ_BUFFER_SIZE];
 		for(int i = 0; i < filePaths.length; i++){
 			String temp = filePaths[i];		
 			if(temp.equalsIgnoreCase("No Selection")){
 				return data;
 			}
+			StringBuilder contents = new StringBuilder();
 		      try{
-		         // open input stream test.txt for reading purpose.
 		         is = new FileInputStream(temp);
-		         
-		         // create new input stream reader
 		         isr = new InputStreamReader(is);
 		         
-		         // create new buffered reader
-		         br = new BufferedReader(isr);
-		      
-		         int value=0;
-		         
-		         // reads to the end of the stream 
-		         while((value = br.read()) != -1)
+		         // reads to the end of the stream a buffer at a time
+		         int read;
+		         while((read = isr.read(buffer, 0, buffer.length)) != -1)
 		         {
-		            // converts int to character
-		            char c = (char)value;
-		            
-		            // add characters to string
-		            filePath += c;
+		            contents.append(buffer, 0, read);
 		         }
 		         
 		      }catch(Exception e){
@@ -146,15 +272,14 @@ public class FileReader {
 		      }finally{
 		         
 		         // releases resources associated with the streams
-		         if(is!=null)
-		            is.close();
 		         if(isr!=null)
 		            isr.close();
-		         if(br!=null)
-		            br.close();
+		         else if(is!=null)
+		            is.close();
+		         isr = null;
+		         is = null;
 		      }
-		      data.add(filePath);
-		      filePath = "";
+		      data.add(contents.toString());
 		}
 		return data;
 	}
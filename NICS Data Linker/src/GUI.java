@@ -53,6 +53,7 @@ public class GUI extends JFrame implements ActionListener{
 	private JMenuItem setPath;
 	private JMenuItem setAccessPath;
 	private JMenuItem resolveNacks;
+	private JMenuItem patientHistory;
 	private JButton printNacks;
 	private JButton printAcks;
 	private JButton processNics;
@@ -85,6 +86,7 @@ public class GUI extends JFrame implements ActionListener{
 		setPath = new JMenuItem("Set File Path...");
 		setAccessPath = new JMenuItem("Set Access File Path...");
 		resolveNacks = new JMenuItem("Resolve Nacks");
+		patientHistory = new JMenuItem("Patient History");
 		
 		printNacks = new JButton("Non-Acknowledged Report");
 		printAcks = new JButton("Acknowledged Report");
@@ -101,6 +103,7 @@ public class GUI extends JFrame implements ActionListener{
 		help.addActionListener(this);
 		close.addActionListener(this);
 		resolveNacks.addActionListener(this);
+		patientHistory.addActionListener(this);
 		
 		btnPanel = new JPanel();
 		btnPanel.setLayout(new MigLayout());
@@ -175,6 +178,7 @@ public class GUI extends JFrame implements ActionListener{
 		fileMenu.add(setPath);
 		fileMenu.add(setAccessPath);
 		fileMenu.add(resolveNacks);
+		fileMenu.add(patientHistory);
 		fileMenu.add(close);
 		helpMenu.add(help);
 		helpMenu.add(about);
@@ -223,6 +227,7 @@ public class GUI extends JFrame implements ActionListener{
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 		}catch(Exception e){
 		}
+		PipelineMetrics.register();
 		SwingUtilities.invokeAndWait(doCreateAndShowGUI);
 	}
 	
@@ -282,7 +287,12 @@ public class GUI extends JFrame implements ActionListener{
 			ac.resolveNacks();
 		}
 		
+		if(e.getSource() == this.patientHistory){
+			ac.showPatientHistory();
+		}
+		
 		if(e.getSource() == this.close){
+			ac.clearAuthorizations();
 			this.dispose();
 		}
 	}
@@ -0,0 +1,202 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the HL7 messages contained in a single NICS, ACK or NACK file.
+ * The file is decoded in bulk buffers and a new message is started every
+ * time an "MSH|" segment begins a line, so only the message currently being
+ * assembled is held in memory rather than the whole file. Anything that
+ * appears before the first MSH segment (batch headers and the like) is kept
+ * with the first message, and a file without any MSH segment is returned as
+ * one message, which matches how the files were handled when they were read
+ * whole.
+ */
+public class HL7MessageReader implements Iterator<String>, Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String HEADER = "MSH|";
+
+	private final Reader reader;
+	private final String fileName;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int bufferPos = 0;
+	private int bufferLen = 0;
+	private boolean eof = false;
+
+	private final StringBuilder message = new StringBuilder();
+	private boolean sawHeader = false;
+	private boolean atLineStart = true;
+	private int lineStart = 0;
+	private String next = null;
+	private long readNanos = 0;
+	private int messageCount = 0;
+
+	/**
+	 * Opens the file at the given path for message streaming.
+	 * @param filePath - the file to read
+	 * @throws IOException
+	 */
+	public HL7MessageReader(String filePath) throws IOException{
+		this(new InputStreamReader(new FileInputStream(filePath)), new File(filePath).getName());
+	}
+
+	/**
+	 * Streams messages out of an already opened reader.
+	 * @param reader - the character source, closed by {@link #close()}
+	 */
+	public HL7MessageReader(Reader reader){
+		this(reader, null);
+	}
+
+	private HL7MessageReader(Reader reader, String fileName){
+		this.reader = reader;
+		this.fileName = fileName;
+	}
+
+	@Override
+	public boolean hasNext(){
+		if(next == null){
+			try{
+				next = readMessage();
+			}catch(IOException e){
+				throw new HL7ReadException(e);
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public String next(){
+		if(!hasNext()){
+			throw new NoSuchElementException();
+		}
+		String message = next;
+		next = null;
+		messageCount++;
+		return message;
+	}
+
+	@Override
+	public void remove(){
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return the messages handed out so far
+	 */
+	public int getMessageCount(){
+		return messageCount;
+	}
+
+	/**
+	 * @return the time spent reading from the file so far, only kept while
+	 * {@link PipelineMetrics} are enabled
+	 */
+	public long getReadNanos(){
+		return readNanos;
+	}
+
+	@Override
+	public void close() throws IOException{
+		reader.close();
+	}
+
+	/**
+	 * Reads characters until a complete message has been assembled.
+	 * @return the next message or null at the end of the file
+	 * @throws IOException
+	 */
+	private String readMessage() throws IOException{
+		while(true){
+			if(bufferPos == bufferLen){
+				if(eof || !fill()){
+					return drain();
+				}
+			}
+			char c = buffer[bufferPos++];
+			if(c == '\r' || c == '\n'){
+				message.append(c);
+				atLineStart = true;
+				lineStart = message.length();
+				continue;
+			}
+			message.append(c);
+			if(atLineStart){
+				int matched = message.length() - lineStart;
+				if(HEADER.charAt(matched - 1) != c){
+					atLineStart = false;
+				}else if(matched == HEADER.length()){
+					atLineStart = false;
+					if(sawHeader){
+						// a new message begins at lineStart
+						String complete = message.substring(0, lineStart);
+						message.delete(0, lineStart);
+						lineStart = 0;
+						return complete;
+					}
+					sawHeader = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Refills the character buffer.
+	 * @return false once the end of the stream has been reached
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException{
+		long start = PipelineMetrics.now();
+		FileReadEvent event = new FileReadEvent();
+		event.begin();
+		int read = reader.read(buffer, 0, buffer.length);
+		readNanos += PipelineMetrics.since(start);
+		if(event.shouldCommit()){
+			event.file = fileName;
+			event.characters = Math.max(read, 0);
+			event.commit();
+		}
+		if(read == -1){
+			eof = true;
+			return false;
+		}
+		bufferPos = 0;
+		bufferLen = read;
+		return true;
+	}
+
+	/**
+	 * Hands back whatever is left once the file is exhausted.
+	 * @return the final message or null if nothing remains
+	 */
+	private String drain(){
+		if(message.length() == 0){
+			return null;
+		}
+		String remaining = message.toString();
+		message.setLength(0);
+		lineStart = 0;
+		return remaining;
+	}
+
+	/**
+	 * Unchecked wrapper so read failures can surface through the Iterator
+	 * interface. The original IOException is the cause.
+	 */
+	@SuppressWarnings("serial")
+	public static class HL7ReadException extends RuntimeException {
+		public HL7ReadException(IOException cause){
+			super(cause.getMessage(), cause);
+		}
+
+		public IOException getIOException(){
+			return (IOException) getCause();
+		}
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ * A reusable, single pass tokenizer for the NICS, ACK and NACK messages that
+ * {@link FileReader} extracts data from. The tokenizer only records offsets
+ * into the message while scanning and no strings are created until one of
+ * the value accessors is called, so one instance can be reset and reused for
+ * every message in a file.
+ *
+ * For a well formed message the values returned are the ones the original
+ * regular expression splitting produced:
+ * <ul>
+ * <li>the message body is the text following the first "CS-ADT.1." control
+ * ID prefix, up to the next occurrence of the prefix</li>
+ * <li>the Meditech ID is the body up to the first "|T|"</li>
+ * <li>the NACK ID is the body up to the first "ERR"</li>
+ * <li>the patient name is field 14 of the body with '^' read as a space</li>
+ * <li>the event code follows the first "ADT^" before the control ID with
+ * '|' read as a space</li>
+ * </ul>
+ *
+ * The splitting differed in a few cases, all of them malformed messages:
+ * <ul>
+ * <li>the "CS-ADT.1." prefix is matched literally, where the pattern let
+ * each '.' stand for any character</li>
+ * <li>an empty value at the end of the body or header, such as an empty
+ * name in the last field, is returned as "" where the split dropped the
+ * trailing empty string and failed with an index out of bounds</li>
+ * <li>a missing control ID, name field or event code gives null, where the
+ * split failed the same way</li>
+ * </ul>
+ *
+ * Instances are not thread safe.
+ */
+public class HL7Tokenizer {
+
+	public static final String CONTROL_ID_PREFIX = "CS-ADT.1.";
+	private static final String PROCESSING_ID = "|T|";
+	private static final String ERROR_SEGMENT = "ERR";
+	private static final String ADT_EVENT = "ADT^";
+	private static final int NAME_FIELD = 14;
+
+	private CharSequence message;
+	private int bodyStart;
+	private int bodyEnd;
+	private int[] fieldStarts = new int[NAME_FIELD + 2];
+	private int fieldsScanned;
+	private int scanPos;
+
+	/**
+	 * Points the tokenizer at a new message.
+	 * @param message - the message to tokenize
+	 * @return true if the message carries a CS-ADT.1. control ID
+	 */
+	public boolean reset(CharSequence message){
+		this.message = message;
+		this.fieldsScanned = 0;
+		int control = indexOf(CONTROL_ID_PREFIX, 0, message.length());
+		if(control < 0){
+			bodyStart = -1;
+			bodyEnd = -1;
+			return false;
+		}
+		bodyStart = control + CONTROL_ID_PREFIX.length();
+		int nextControl = indexOf(CONTROL_ID_PREFIX, bodyStart, message.length());
+		bodyEnd = nextControl < 0 ? message.length() : nextControl;
+		fieldStarts[0] = bodyStart;
+		fieldsScanned = 1;
+		scanPos = bodyStart;
+		return true;
+	}
+
+	/**
+	 * @return true if the current message carries a CS-ADT.1. control ID
+	 */
+	public boolean hasControlId(){
+		return bodyStart >= 0;
+	}
+
+	/**
+	 * Checks whether the whole message contains the given text.
+	 * @param text - the text to look for
+	 * @return true if it is found anywhere in the message
+	 */
+	public boolean contains(String text){
+		return indexOf(text, 0, message.length()) >= 0;
+	}
+
+	/**
+	 * @return the Meditech ID of a NICS or ACK message, or null when there is no control ID
+	 */
+	public String meditechId(){
+		if(!hasControlId()){
+			return null;
+		}
+		int end = indexOf(PROCESSING_ID, bodyStart, bodyEnd);
+		return trimmed(bodyStart, end < 0 ? bodyEnd : end, ' ');
+	}
+
+	/**
+	 * @return the Meditech ID of a NACK message, or null when there is no control ID
+	 */
+	public String nackId(){
+		if(!hasControlId()){
+			return null;
+		}
+		int end = indexOf(ERROR_SEGMENT, bodyStart, bodyEnd);
+		return trimmed(bodyStart, end < 0 ? bodyEnd : end, ' ');
+	}
+
+	/**
+	 * @return the patient name of a NICS message, or null when the field is missing
+	 */
+	public String patientName(){
+		if(!hasControlId() || !scanFields(NAME_FIELD)){
+			return null;
+		}
+		return trimmed(fieldStart(NAME_FIELD), fieldEnd(NAME_FIELD), '^');
+	}
+
+	/**
+	 * @return the ADT event code of a NICS message, or null when there is none
+	 */
+	public String eventCode(){
+		if(!hasControlId()){
+			return null;
+		}
+		int headerEnd = bodyStart - CONTROL_ID_PREFIX.length();
+		int event = indexOf(ADT_EVENT, 0, headerEnd);
+		if(event < 0){
+			return null;
+		}
+		int start = event + ADT_EVENT.length();
+		int end = indexOf(ADT_EVENT, start, headerEnd);
+		return trimmed(start, end < 0 ? headerEnd : end, '|');
+	}
+
+	/**
+	 * Offset of the first character of a '|' separated field of the body.
+	 * @param field - zero based field number, field 0 starts with the control ID
+	 * @return the offset into the message or -1 if the body has fewer fields
+	 */
+	public int fieldStart(int field){
+		if(!hasControlId() || !scanFields(field)){
+			return -1;
+		}
+		return fieldStarts[field];
+	}
+
+	/**
+	 * Offset just past the last character of a '|' separated field of the body.
+	 * @param field - zero based field number, field 0 starts with the control ID
+	 * @return the offset into the message or -1 if the body has fewer fields
+	 */
+	public int fieldEnd(int field){
+		if(!hasControlId() || !scanFields(field)){
+			return -1;
+		}
+		if(scanFields(field + 1)){
+			return fieldStarts[field + 1] - 1;
+		}
+		return bodyEnd;
+	}
+
+	/**
+	 * Scans forward, only as far as needed, until the start of the given field is known.
+	 * @param field - the field that is needed
+	 * @return false if the body ends before the field starts
+	 */
+	private boolean scanFields(int field){
+		if(field >= fieldStarts.length){
+			int[] grown = new int[field + 2];
+			System.arraycopy(fieldStarts, 0, grown, 0, fieldsScanned);
+			fieldStarts = grown;
+		}
+		while(fieldsScanned <= field && scanPos < bodyEnd){
+			if(message.charAt(scanPos++) == '|'){
+				fieldStarts[fieldsScanned++] = scanPos;
+			}
+		}
+		return fieldsScanned > field;
+	}
+
+	/**
+	 * Builds a string from a region of the message, treating the given separator
+	 * as a space and trimming whitespace from both ends, the same as a replace
+	 * followed by a trim.
+	 */
+	private String trimmed(int start, int end, char separator){
+		while(start < end && isBlank(message.charAt(start), separator)){
+			start++;
+		}
+		while(end > start && isBlank(message.charAt(end - 1), separator)){
+			end--;
+		}
+		if(separator == ' ' || start == end){
+			return message.subSequence(start, end).toString();
+		}
+		char[] chars = new char[end - start];
+		for(int i = start; i < end; i++){
+			char c = message.charAt(i);
+			chars[i - start] = (c == separator) ? ' ' : c;
+		}
+		return new String(chars);
+	}
+
+	private static boolean isBlank(char c, char separator){
+		return c <= ' ' || c == separator;
+	}
+
+	/**
+	 * Finds text inside a region of the message without allocating.
+	 */
+	private int indexOf(String text, int from, int to){
+		if(message instanceof String){
+			int found = ((String) message).indexOf(text, from);
+			return (found < 0 || found + text.length() > to) ? -1 : found;
+		}
+		int last = to - text.length();
+		char first = text.charAt(0);
+		for(int i = from; i <= last; i++){
+			if(message.charAt(i) != first){
+				continue;
+			}
+			int j = 1;
+			while(j < text.length() && message.charAt(i + j) == text.charAt(j)){
+				j++;
+			}
+			if(j == text.length()){
+				return i;
+			}
+		}
+		return -1;
+	}
+}
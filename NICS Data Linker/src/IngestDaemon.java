@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the NICS drop directory and processes each NICS, ACK or NACK file
+ * as soon as it has finished landing, instead of waiting for an operator to
+ * process a whole day of files at once. A file is only picked up after its
+ * size and modification time have stopped changing for the settle period, so
+ * files that are still being copied in are not read half written. Files that
+ * are already in the directory when the daemon starts are picked up the same
+ * way. Each file is read exactly once and each message in it is handled as
+ * its own type, so one file can hold NICS, ACK and NACK messages together.
+ * Each type of message in a file is checked against and recorded in the same
+ * {@link FileLedger} as the other ways of processing files, so after a
+ * restart the types already in the database are skipped and the rest are
+ * processed again. The ACK messages of a file are recorded only once one of
+ * their IDs has matched a Patients row.
+ */
+public class IngestDaemon implements Runnable {
+
+	public static final long DEFAULT_SETTLE_MILLIS = 2000;
+
+	private final Path directory;
+	private final String dbPath;
+	private final long settleMillis;
+	private final PrintWriter log;
+	private final WatchService watcher;
+
+	// files that have appeared but have not settled yet, in arrival order
+	private final Map<Path, Snapshot> pending = new LinkedHashMap<Path, Snapshot>();
+	// the size and modification time each file had when it was processed
+	private final Map<Path, Snapshot> processed = new HashMap<Path, Snapshot>();
+	private volatile boolean running = true;
+
+	/**
+	 * @param directory - the directory NICS, ACK and NACK files are dropped into
+	 * @param dbPath - the MS Access database to write to
+	 * @param settleMillis - how long a file must stay unchanged before it is read
+	 * @param log - where progress is reported
+	 * @throws IOException if the directory cannot be watched
+	 */
+	public IngestDaemon(Path directory, String dbPath, long settleMillis, PrintWriter log) throws IOException{
+		this.directory = directory;
+		this.dbPath = dbPath;
+		this.settleMillis = settleMillis;
+		this.log = log;
+		this.watcher = FileSystems.getDefault().newWatchService();
+		directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+	}
+
+	/**
+	 * Watches until {@link #stop()} is called or the thread is interrupted.
+	 */
+	@Override
+	public void run(){
+		report("Watching " + directory + " for NICS, ACK and NACK files");
+		PipelineMetrics.Snapshot started = PipelineMetrics.getInstance().snapshot();
+		try{
+			queueExisting();
+			while(running){
+				WatchKey key = watcher.poll(Math.max(settleMillis / 2, 50), TimeUnit.MILLISECONDS);
+				if(key != null){
+					for(WatchEvent<?> event : key.pollEvents()){
+						if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+							continue;
+						}
+						Path file = directory.resolve((Path) event.context());
+						if(!pending.containsKey(file)){
+							pending.put(file, null);
+						}
+					}
+					key.reset();
+				}
+				processSettled();
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}catch(ClosedWatchServiceException e){
+			// stopped
+		}finally{
+			try{
+				watcher.close();
+			}catch(IOException e){
+			}
+			try{
+				AccessController.getInstance().closeSession();
+			}catch(IOException e){
+				report("Could not properly close database: " + e.getMessage());
+			}
+		}
+		if(PipelineMetrics.active()){
+			report(PipelineMetrics.getInstance().snapshot().since(started).toString());
+		}
+		report("Stopped watching " + directory);
+	}
+
+	/**
+	 * Queues the files already in the directory. The watch is registered
+	 * first, so a file landing during the listing is queued by its event as
+	 * well and only read once.
+	 */
+	private void queueExisting(){
+		try{
+			DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+			try{
+				for(Path file : stream){
+					if(Files.isRegularFile(file)){
+						pending.put(file, null);
+					}
+				}
+			}finally{
+				stream.close();
+			}
+		}catch(IOException e){
+			report("Could not list " + directory + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Stops the daemon after the file currently being processed, if any.
+	 */
+	public void stop(){
+		running = false;
+		try{
+			watcher.close();
+		}catch(IOException e){
+		}
+	}
+
+	/**
+	 * Processes every pending file whose size and modification time have held
+	 * still for the settle period.
+	 */
+	private void processSettled(){
+		long now = System.currentTimeMillis();
+		List<Path> ready = new ArrayList<Path>();
+		Iterator<Map.Entry<Path, Snapshot>> it = pending.entrySet().iterator();
+		while(it.hasNext()){
+			Map.Entry<Path, Snapshot> entry = it.next();
+			Path file = entry.getKey();
+			if(!Files.isRegularFile(file)){
+				it.remove();
+				continue;
+			}
+			Snapshot current;
+			try{
+				current = new Snapshot(Files.size(file), Files.getLastModifiedTime(file).toMillis(), now);
+			}catch(IOException e){
+				// removed or locked in the meantime, check again later
+				continue;
+			}
+			Snapshot last = entry.getValue();
+			if(last == null || !last.sameContent(current)){
+				entry.setValue(current);
+			}else if(now - last.seenAt >= settleMillis){
+				it.remove();
+				if(!current.sameContent(processed.get(file))){
+					processed.put(file, current);
+					ready.add(file);
+				}
+			}
+		}
+		for(Path file : ready){
+			process(file);
+		}
+	}
+
+	/**
+	 * Reads a single settled file and ingests each kind of message in it that
+	 * the ledger does not show as already in the database.
+	 */
+	private void process(Path file){
+		String name = file.getFileName().toString();
+		String path = file.toString();
+		try{
+			Map<MessageType, ArrayList<String>> found = new FileReader().extractByType(path);
+			if(found.isEmpty()){
+				report(name + ": no NICS, ACK or NACK messages, skipped");
+				return;
+			}
+			ArrayList<String> nics = found.get(MessageType.NICS);
+			ArrayList<String> acks = found.get(MessageType.ACK);
+			ArrayList<String> nacks = found.get(MessageType.NACK);
+			if(nics != null && alreadyProcessed(path, MessageType.NICS)){
+				report(name + ": NICS already processed, skipped");
+				nics = null;
+			}
+			if(acks != null && alreadyProcessed(path, MessageType.ACK)){
+				report(name + ": ACK already processed, skipped");
+				acks = null;
+			}
+			if(nics != null || acks != null){
+				AccessController ac = AccessController.getInstance();
+				ac.connect(dbPath);
+				try{
+					if(nics != null){
+						PatientWriter.Result result = ac.insertNics(nics);
+						report(name + ": NICS, " + result.getInserted() + " rows written, " + result.getUpdated() + " updated, " + result.getSkipped() + " repeats skipped");
+						record(path, MessageType.NICS);
+					}
+					if(acks != null){
+						AckReconciler.Result result = ac.reconcileAcks(acks);
+						report(name + ": ACK, " + acks.size() + " IDs, " + result.getNewlyAcknowledged() + " rows newly acknowledged");
+						if(!result.getMatchedIds().isEmpty()){
+							record(path, MessageType.ACK);
+						}
+					}
+				}finally{
+					ac.disconnect();
+				}
+			}
+			if(nacks != null){
+				report(name + ": NACK, " + nacks.size() + " rejected IDs");
+			}
+		}catch(IOException e){
+			report(name + ": failed, " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return true if the ledger shows the file's data of one type was already
+	 * written to the database, as when it is still in the directory after a restart
+	 */
+	private boolean alreadyProcessed(String path, MessageType type){
+		try{
+			return AccessController.getInstance().getLedger().isProcessed(path, type, dbPath);
+		}catch(IOException e){
+			// without the ledger the file is treated as new
+			return false;
+		}
+	}
+
+	/**
+	 * Records in the ledger that the file's data of one type is in the database.
+	 */
+	private void record(String path, MessageType type){
+		try{
+			AccessController.getInstance().getLedger().record(Collections.singletonList(path), type, dbPath);
+		}catch(IOException e){
+			report("Could not record " + path + " in the ledger: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes one line of progress straight away, since the daemon runs until
+	 * it is stopped and nothing else would flush it.
+	 */
+	private void report(String message){
+		log.println(message);
+		log.flush();
+	}
+
+	/**
+	 * Size and modification time of a file at the moment it was looked at.
+	 */
+	private static class Snapshot {
+		final long size;
+		final long modified;
+		final long seenAt;
+
+		Snapshot(long size, long modified, long seenAt){
+			this.size = size;
+			this.modified = modified;
+			this.seenAt = seenAt;
+		}
+
+		boolean sameContent(Snapshot other){
+			return other != null && other.size == size && other.modified == modified;
+		}
+	}
+}
@@ -0,0 +1,29 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one LDAP bind against a domain controller while
+ * checking an elevation. The account name and password are not recorded.
+ */
+@Name("nics.LdapBind")
+@Label("LDAP Bind")
+@Category({"NICS Data Linker", "Authentication"})
+@Description("A bind to a domain controller")
+public class LdapBindEvent extends Event {
+
+	@Label("Domain")
+	String domain;
+
+	@Label("Server")
+	String server;
+
+	@Label("Succeeded")
+	boolean succeeded;
+
+	@Label("Failure")
+	@Description("The exception class when the bind failed")
+	String failure;
+}
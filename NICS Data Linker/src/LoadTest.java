@@ -0,0 +1,288 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Drives the whole pipeline end to end against a synthetic corpus from
+ * {@link CorpusGenerator}: NICS files are streamed into Patients, ACK
+ * files are parsed and reconciled against the table, and the patient report
+ * is built from the result. Each stage is timed and its peak heap recorded,
+ * so a change can be judged on the way the application is actually used
+ * rather than on one method in isolation.
+ *
+ * <pre>
+ * java LoadTest [--rows &lt;n&gt;] [--admissions &lt;n&gt;] [options]
+ *
+ * options:
+ *   --rows &lt;n&gt;         Patients rows in the database before the run (default 100000)
+ *   --admissions &lt;n&gt;   new patients in the NICS files (default 10000)
+ *   --per-file &lt;n&gt;     messages in each NICS and ACK file
+ *   --threads &lt;n&gt;      how many files to parse at once
+ *   --batch-size &lt;n&gt;   rows per Patients insert
+ *   --mode &lt;mode&gt;      append, skip (the default) or update
+ *   --seed &lt;n&gt;         picks the generated data
+ *   --dir &lt;path&gt;       keep the corpus in this directory instead of a temporary one
+ *   --metrics          also print the {@link PipelineMetrics} counters for the run
+ * </pre>
+ *
+ * Peak heap is the sum of the peak usage of every heap memory pool, which are
+ * reset after a garbage collection at the start of each stage. Run with the
+ * heap size the application is deployed with, since a larger heap lets the
+ * peaks grow.
+ */
+public class LoadTest {
+
+	private int rows = 100000;
+	private int admissions = 10000;
+	private int perFile = CorpusGenerator.DEFAULT_MESSAGES_PER_FILE;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int batchSize = -1;
+	private PatientWriter.Mode writeMode;
+	private long seed = 1;
+	private String dirPath;
+	private boolean metrics;
+	private final List<Stage> stages = new ArrayList<Stage>();
+	// the ACK IDs from the parse stage, for the reconciliation stage
+	private ArrayList<String> parsed;
+
+	/**
+	 * Runs the load test and exits with its status code.
+	 * @param args - the options
+	 */
+	public static void main(String[] args){
+		System.setProperty("java.awt.headless", "true");
+		LoadTest test = new LoadTest();
+		String problem = test.parse(args);
+		if(problem != null){
+			System.err.println(problem);
+			System.err.println("Usage: java LoadTest [--rows <n>] [--admissions <n>] [--per-file <n>] [--threads <n>]");
+			System.err.println("         [--batch-size <n>] [--mode <append|skip|update>] [--seed <n>] [--dir <directory>] [--metrics]");
+			System.exit(BatchMain.EXIT_USAGE);
+		}
+		try{
+			test.run(System.out);
+			System.exit(BatchMain.EXIT_OK);
+		}catch(Exception e){
+			System.err.println("Failed: " + e);
+			System.exit(BatchMain.EXIT_FAILED);
+		}
+	}
+
+	/**
+	 * Reads the command line.
+	 * @return a description of the problem, or null if the arguments are usable
+	 */
+	private String parse(String[] args){
+		for(int i = 0; i < args.length; i++){
+			String arg = args[i];
+			if(arg.equals("--metrics")){
+				metrics = true;
+				continue;
+			}
+			if(i + 1 >= args.length){
+				return "Missing value for " + arg;
+			}
+			String value = args[++i];
+			try{
+				if(arg.equals("--rows")){
+					rows = Integer.parseInt(value);
+				}else if(arg.equals("--admissions")){
+					admissions = Integer.parseInt(value);
+				}else if(arg.equals("--per-file")){
+					perFile = Integer.parseInt(value);
+				}else if(arg.equals("--threads")){
+					threads = Integer.parseInt(value);
+				}else if(arg.equals("--batch-size")){
+					batchSize = Integer.parseInt(value);
+				}else if(arg.equals("--seed")){
+					seed = Long.parseLong(value);
+				}else if(arg.equals("--dir")){
+					dirPath = value;
+				}else if(arg.equals("--mode")){
+					writeMode = PatientWriter.Mode.valueOf(value.toUpperCase());
+				}else{
+					return "Unknown option " + arg;
+				}
+			}catch(IllegalArgumentException e){
+				return "Bad value for " + arg + ": " + value;
+			}
+		}
+		if(rows < 0 || admissions < 0 || perFile < 1 || threads < 1 || (batchSize != -1 && batchSize < 1)){
+			return "Counts must be positive";
+		}
+		return null;
+	}
+
+	/**
+	 * Generates the corpus, runs every stage and prints the results.
+	 * @param out - where progress and results go
+	 * @throws Exception if generating the corpus or any stage fails
+	 */
+	public void run(PrintStream out) throws Exception{
+		File dir = dirPath != null ? new File(dirPath) : Files.createTempDirectory("nics-load-test").toFile();
+		dir.mkdirs();
+		try{
+			CorpusGenerator generator = new CorpusGenerator(seed);
+			generator.setMessagesPerFile(perFile);
+			final File db = new File(dir, "Patients.accdb");
+			long start = System.nanoTime();
+			generator.createDatabase(db, rows);
+			List<String> nicsFiles = generator.writeNics(dir, rows, admissions);
+			List<String> ackFiles = generator.writeAcks(dir, 0, rows + admissions);
+			out.printf("Generated %d Patients rows, %d NICS files and %d ACK files in %d ms%n",
+					rows, nicsFiles.size(), ackFiles.size(), (System.nanoTime() - start) / 1000000);
+			stages.clear();
+			if(metrics){
+				PipelineMetrics.getInstance().setEnabled(true);
+			}
+			PipelineMetrics.Snapshot before = PipelineMetrics.getInstance().snapshot();
+			runStages(db.getPath(), nicsFiles.toArray(new String[nicsFiles.size()]), ackFiles.toArray(new String[ackFiles.size()]));
+			print(out);
+			if(PipelineMetrics.active()){
+				out.println(PipelineMetrics.getInstance().snapshot().since(before));
+			}
+		}finally{
+			AccessController.getInstance().closeSession();
+			if(dirPath == null){
+				delete(dir);
+			}
+		}
+	}
+
+	private void runStages(String dbPath, final String[] nicsFiles, final String[] ackFiles) throws Exception{
+		final AccessController ac = AccessController.getInstance();
+		if(batchSize > 0){
+			ac.setBatchSize(batchSize);
+		}
+		if(writeMode != null){
+			ac.setWriteMode(writeMode);
+		}
+		ac.connect(dbPath);
+		final ParallelIngestor ingestor = new ParallelIngestor(threads);
+
+		measure("Ingest NICS files", new Callable<Integer>(){
+			@Override
+			public Integer call() throws Exception{
+				PatientWriter.Result written = new PatientWriter.Result();
+				checked(ingestor.stream(nicsFiles, MessageType.NICS, ac.nicsWriter(written, ProgressListener.NONE), ProgressListener.NONE));
+				ac.disconnect();
+				return written.getInserted() + written.getUpdated() + written.getSkipped();
+			}
+		});
+		measure("Parse ACK files", new Callable<Integer>(){
+			@Override
+			public Integer call() throws Exception{
+				Set<String> acks = new LinkedHashSet<String>();
+				checked(ingestor.stream(ackFiles, MessageType.ACK, ParallelIngestor.collectInto(acks), ProgressListener.NONE));
+				parsed = new ArrayList<String>(acks);
+				return parsed.size();
+			}
+		});
+		measure("Reconcile ACKs", new Callable<Integer>(){
+			@Override
+			public Integer call() throws Exception{
+				AckReconciler.Result result = ac.reconcileAcks(parsed);
+				ac.disconnect();
+				parsed = null;
+				return result.getRowsScanned();
+			}
+		});
+		measure("Patient report", new Callable<Integer>(){
+			@Override
+			public Integer call() throws Exception{
+				PatientReport report = ac.getPatientReport(ProgressListener.NONE);
+				return report.getAcknowledged().size() + report.getResolved().size() + report.getUnresolved().size();
+			}
+		});
+	}
+
+	private static void checked(ParallelIngestor.Result result) throws IOException{
+		if(!result.getFailures().isEmpty()){
+			throw new IOException("Could not read generated files:\n" + result.describeFailures());
+		}
+	}
+
+	/**
+	 * Runs one stage, recording its wall time and the peak heap while it ran.
+	 * @param name - what the stage does
+	 * @param stage - does the work and returns the number of rows it handled
+	 */
+	private void measure(String name, Callable<Integer> stage) throws Exception{
+		List<MemoryPoolMXBean> pools = heapPools();
+		System.gc();
+		for(MemoryPoolMXBean pool : pools){
+			pool.resetPeakUsage();
+		}
+		long start = System.nanoTime();
+		int handled = stage.call().intValue();
+		long nanos = System.nanoTime() - start;
+		long peak = 0;
+		for(MemoryPoolMXBean pool : pools){
+			peak += pool.getPeakUsage().getUsed();
+		}
+		stages.add(new Stage(name, handled, nanos, peak));
+	}
+
+	private static List<MemoryPoolMXBean> heapPools(){
+		List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP && pool.isValid()){
+				pools.add(pool);
+			}
+		}
+		return pools;
+	}
+
+	private void print(PrintStream out){
+		out.printf("%-18s %12s %10s %12s %14s%n", "Stage", "Rows", "Wall ms", "Rows/s", "Peak heap MB");
+		long totalNanos = 0;
+		long maxPeak = 0;
+		for(Stage stage : stages){
+			out.printf("%-18s %12d %10d %12.0f %14.1f%n", stage.name, stage.rows, stage.nanos / 1000000,
+					stage.rowsPerSecond(), stage.peakHeap / (1024.0 * 1024.0));
+			totalNanos += stage.nanos;
+			maxPeak = Math.max(maxPeak, stage.peakHeap);
+		}
+		out.printf("%-18s %12s %10d %12s %14.1f%n", "Total", "", totalNanos / 1000000, "", maxPeak / (1024.0 * 1024.0));
+	}
+
+	private static void delete(File file){
+		File[] children = file.listFiles();
+		if(children != null){
+			for(File child : children){
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * The measurements of one stage.
+	 */
+	private static class Stage {
+		final String name;
+		final int rows;
+		final long nanos;
+		final long peakHeap;
+
+		Stage(String name, int rows, long nanos, long peakHeap){
+			this.name = name;
+			this.rows = rows;
+			this.nanos = nanos;
+			this.peakHeap = peakHeap;
+		}
+
+		double rowsPerSecond(){
+			return nanos == 0 ? 0 : rows * 1e9 / nanos;
+		}
+	}
+}
@@ -1,9 +1,32 @@
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.naming.AuthenticationException;
 import javax.naming.CompositeName;
@@ -25,22 +48,156 @@ import javax.security.auth.login.AccountException;
 import javax.security.auth.login.FailedLoginException;
 import javax.security.auth.login.LoginException;
 
+/**
+ * Checks Active Directory group membership by binding as the user against
+ * one of the domain's controllers. One shared instance per domain, from
+ * {@link #getInstance(String)}, is safe to use from several threads.
+ *
+ * The domain controllers are found through a DNS SRV lookup that is cached
+ * for {@link #DEFAULT_SRV_TTL_MILLIS}; the JNDI DNS provider does not report
+ * record TTLs, so the cache lifetime is set with {@link #setSrvTtlMillis(long)}.
+ * If a refresh fails the last good list keeps being used. Every check is a
+ * real bind as the user on a new connection. The JNDI connection pool is
+ * deliberately not used: it keeps connections keyed by the credentials, so a
+ * repeated check would skip the bind and a user whose password had changed,
+ * or whose account had been disabled or locked, would keep passing. Only a
+ * connection bound as a service account would be safe to pool, and there is
+ * none.
+ *
+ * Controllers are tried fastest first, by the latency seen on earlier binds,
+ * and controllers that recently could not be reached are tried last. The
+ * user's credentials go to one controller per check: another controller is
+ * only tried when the connection to the last one could not be opened, so a
+ * mistyped password counts once towards the account's lockout. In hedged
+ * mode, the default, plain TCP connections are raced first: a connection to
+ * the next controller is started whenever the ones already tried have not
+ * connected within the hedge delay, and the bind goes to the first controller
+ * that connects, so a dead controller costs the hedge delay instead of a
+ * connect timeout.
+ */
 public class MemberOfAuth{
 
 	private final String domainName;
     private static final String CONTEXT_FACTORY_CLASS = "com.sun.jndi.ldap.LdapCtxFactory";
+    public static final long DEFAULT_SRV_TTL_MILLIS = 5 * 60 * 1000;
+    public static final long DEFAULT_HEDGE_DELAY_MILLIS = 300;
+    // how long to wait before asking DNS again after a failed lookup
+    private static final long FAILED_LOOKUP_RETRY_MILLIS = 30 * 1000;
+    // how long a controller that could not be reached is tried after the others
+    private static final long UNREACHABLE_MILLIS = 60 * 1000;
+    private static final String CONNECT_TIMEOUT_MILLIS = "5000";
+    private static final String READ_TIMEOUT_MILLIS = "10000";
+    private static final ExecutorService connectors = Executors.newCachedThreadPool(new ThreadFactory(){
+        private final AtomicInteger count = new AtomicInteger();
+        @Override
+        public Thread newThread(Runnable r){
+            Thread thread = new Thread(r, "ldap-connect-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private static final Map<String, MemberOfAuth> instances = new HashMap<String, MemberOfAuth>();
+
+    private final boolean discover;
+    private final AuthMetrics metrics = new AuthMetrics();
     private String ldapServerUrls[];
-    private int lastLdapUrlIndex;
+    private long ldapServerUrlsExpire;
+    private long srvTtlMillis = DEFAULT_SRV_TTL_MILLIS;
+    private final Map<String, ServerHealth> health = new HashMap<String, ServerHealth>();
+    private volatile boolean hedged = true;
+    private volatile long hedgeDelayMillis = DEFAULT_HEDGE_DELAY_MILLIS;
+    
+    /**
+     * @param domainName - the Active Directory domain, e.g. FLH.LOCAL
+     * @return the shared authenticator for the domain
+     */
+    public static MemberOfAuth getInstance(String domainName){
+        synchronized(instances){
+            String key = domainName.toUpperCase();
+            MemberOfAuth auth = instances.get(key);
+            if(auth == null){
+                auth = new MemberOfAuth(domainName);
+                instances.put(key, auth);
+            }
+            return auth;
+        }
+    }
     
+    /**
+     * Finds the domain controllers through DNS the first time they are needed.
+     * @param domainName - the Active Directory domain
+     */
     public MemberOfAuth(String domainName){
     	this.domainName = domainName.toUpperCase();
-    	 
+        this.discover = true;
+    }
+    
+    /**
+     * Uses the given LDAP servers instead of looking them up, for example an
+     * in-process directory during testing.
+     * @param domainName - the Active Directory domain
+     * @param ldapServerUrls - the servers to try, in order, e.g. ldap://localhost:3890
+     */
+    public MemberOfAuth(String domainName, String... ldapServerUrls){
+        this.domainName = domainName.toUpperCase();
+        this.discover = false;
+        this.ldapServerUrls = ldapServerUrls.clone();
+    }
+    
+    /**
+     * @param millis - how long discovered domain controllers are reused before DNS is asked again
+     */
+    public synchronized void setSrvTtlMillis(long millis){
+        srvTtlMillis = millis;
+        ldapServerUrlsExpire = Math.min(ldapServerUrlsExpire, System.currentTimeMillis() + millis);
+    }
+    
+    /**
+     * @param hedged - true to race connections to further controllers while a slow one is still connecting
+     */
+    public void setHedged(boolean hedged){
+        this.hedged = hedged;
+    }
+    
+    /**
+     * @param millis - how long to wait for a connection before also trying the next controller
+     */
+    public void setHedgeDelayMillis(long millis){
+        hedgeDelayMillis = millis;
+    }
+    
+    /**
+     * @return discovery and bind counters for this domain
+     */
+    public AuthMetrics getMetrics(){
+        return metrics;
+    }
+    
+    /**
+     * Returns the domain controllers, looking them up again once the cached
+     * list has expired.
+     * @return the LDAP server URLs, or null if none have ever been found
+     */
+    synchronized String[] serverUrls(){
+        if(!discover){
+            return ldapServerUrls;
+        }
+        long now = System.currentTimeMillis();
+        if(ldapServerUrls != null && now < ldapServerUrlsExpire){
+            return ldapServerUrls;
+        }
+        long began = System.nanoTime();
         try{
-            ldapServerUrls = nsLookup(domainName);
+            String[] found = nsLookup(domainName);
+            metrics.recordDiscovery(System.nanoTime() - began, true);
+            ldapServerUrls = found;
+            ldapServerUrlsExpire = now + srvTtlMillis;
         }catch(Exception e){
+            metrics.recordDiscovery(System.nanoTime() - began, false);
             e.printStackTrace();
+            ldapServerUrlsExpire = now + Math.min(srvTtlMillis, FAILED_LOOKUP_RETRY_MILLIS);
         }
-        lastLdapUrlIndex = 0;
+        return ldapServerUrls;
     }
     
     private static String[] nsLookup(String argDomain) throws Exception {
@@ -49,24 +206,34 @@ public class MemberOfAuth{
             env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
             env.put("java.naming.provider.url", "dns:");
             DirContext ctx = new InitialDirContext(env);
-            Attributes attributes = ctx.getAttributes(String.format("_ldap._tcp.%s", argDomain), new String[] { "srv" });
-            // try thrice to get the KDC servers before throwing error
-            for(int i = 0; i < 3; i++){
+            try{
+                Attributes attributes = ctx.getAttributes(String.format("_ldap._tcp.%s", argDomain), new String[] { "srv" });
                 Attribute a = attributes.get("srv");
                 if(a != null){
-                    List<String> domainServers = new ArrayList<String>();
+                    List<String[]> records = new ArrayList<String[]>();
                     NamingEnumeration<?> enumeration = a.getAll();
                     while (enumeration.hasMoreElements()) {
                         String srvAttr = (String) enumeration.next();
                         // the value are in space separated 0) priority 1)
                         // weight 2) port 3) server
-                        String values[] = srvAttr.toString().split(" ");
-                        domainServers.add(String.format("ldap://%s:%s", values[3], values[2]));
+                        records.add(srvAttr.toString().split(" "));
+                    }
+                    // lowest priority value first, as SRV clients are meant to try them
+                    Collections.sort(records, new Comparator<String[]>(){
+                        @Override
+                        public int compare(String[] a, String[] b){
+                            return Integer.valueOf(a[0]).compareTo(Integer.valueOf(b[0]));
+                        }
+                    });
+                    String domainServersArray[] = new String[records.size()];
+                    for(int i = 0; i < domainServersArray.length; i++){
+                        String values[] = records.get(i);
+                        domainServersArray[i] = String.format("ldap://%s:%s", values[3], values[2]);
                     }
-                    String domainServersArray[] = new String[domainServers.size()];
-                    domainServers.toArray(domainServersArray);
                     return domainServersArray;
                 }
+            }finally{
+                ctx.close();
             }
             throw new Exception("Unable to find srv attribute for the domain " + argDomain);
         }catch (NamingException exp) {
@@ -75,24 +242,237 @@ public class MemberOfAuth{
     }
     
     public boolean isMemberOf(String group, String user, String pass){
+        String[] urls = serverUrls();
+        if(urls == null || urls.length == 0){
+            return false;
+        }
+        List<String> order = orderByHealth(urls);
+        if(hedged){
+            try{
+                String first = firstToConnect(order);
+                if(first == null){
+                    return false;
+                }
+                order.remove(first);
+                order.add(0, first);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return bindInTurn(order, user, pass);
+    }
+    
+    /**
+     * Binds to one controller at a time. The next controller is only tried
+     * when the connection to one could not be opened, since then the
+     * credentials were never sent. Once a controller has been sent them its
+     * answer stands, even a timeout, so a mistyped password counts against
+     * the account once and not once per controller.
+     */
+    private boolean bindInTurn(List<String> order, String user, String pass){
+        for(String url : order){
+            long began = System.nanoTime();
+            try{
+                boolean member = search(url, user, pass);
+                answered(url, System.nanoTime() - began);
+                return member;
+            }catch(NamingException e){
+                if(!neverConnected(e)){
+                    if(!cannotReach(e)){
+                        answered(url, System.nanoTime() - began);
+                    }
+                    return false;
+                }
+                // the AD is not reachable hence retry can be attempted with next available AD
+                unreachable(url);
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Races plain TCP connections to the controllers, without credentials.
+     * Starts with the first controller and adds the next one each time the
+     * hedge delay passes without a connection or an attempt fails to connect.
+     * @return the first controller to accept a connection, or null if none did
+     */
+    private String firstToConnect(List<String> order) throws InterruptedException{
+        CompletionService<String> connects = new ExecutorCompletionService<String>(connectors);
+        List<Future<String>> started = new ArrayList<Future<String>>();
+        int failed = 0;
+        try{
+            started.add(connects.submit(probe(order.get(0))));
+            while(true){
+                boolean more = started.size() < order.size();
+                Future<String> connected = more ? connects.poll(hedgeDelayMillis, TimeUnit.MILLISECONDS) : connects.take();
+                if(connected == null){
+                    metrics.recordHedge();
+                    started.add(connects.submit(probe(order.get(started.size()))));
+                    continue;
+                }
+                try{
+                    return connected.get();
+                }catch(ExecutionException e){
+                    failed++;
+                }
+                if(more){
+                    started.add(connects.submit(probe(order.get(started.size()))));
+                }else if(failed == started.size()){
+                    return null;
+                }
+            }
+        }finally{
+            for(Future<String> attempt : started){
+                attempt.cancel(true);
+            }
+        }
+    }
+    
+    /**
+     * Opens and closes a TCP connection to one controller's LDAP port,
+     * marking the controller unreachable if it cannot be opened.
+     */
+    private Callable<String> probe(final String url){
+        return new Callable<String>(){
+            @Override
+            public String call() throws IOException{
+                URI uri = URI.create(url);
+                int port = uri.getPort() >= 0 ? uri.getPort() : ("ldaps".equalsIgnoreCase(uri.getScheme()) ? 636 : 389);
+                Socket socket = new Socket();
+                try{
+                    socket.connect(new InetSocketAddress(uri.getHost(), port), Integer.parseInt(CONNECT_TIMEOUT_MILLIS));
+                    return url;
+                }catch(IOException e){
+                    unreachable(url);
+                    throw e;
+                }finally{
+                    socket.close();
+                }
+            }
+        };
+    }
+    
+    /**
+     * @return true if the connection to the controller could not be opened,
+     * so no credentials were sent to it
+     */
+    private static boolean neverConnected(NamingException e){
+        if(!(e instanceof CommunicationException)){
+            return false;
+        }
+        Throwable cause = e.getRootCause();
+        return cause instanceof ConnectException || cause instanceof NoRouteToHostException
+                || cause instanceof UnknownHostException
+                || (cause instanceof SocketTimeoutException && cause.getMessage() != null && cause.getMessage().contains("connect"));
+    }
+    
+    /**
+     * @return true if the failure means the controller could not be reached,
+     * so another controller may still answer
+     */
+    private static boolean cannotReach(Throwable e){
+        if(e instanceof CommunicationException){
+            return true;
+        }
+        // JNDI reports a connect or read timeout as a plain NamingException
+        return e instanceof NamingException && e.getMessage() != null && e.getMessage().contains("timed out");
+    }
+    
+    /**
+     * Orders the controllers reachable ones first, then by average latency.
+     * Controllers without a measurement keep their DNS order after the
+     * measured ones.
+     */
+    private synchronized List<String> orderByHealth(String[] urls){
+        final long now = System.currentTimeMillis();
+        final Map<String, ServerHealth> snapshot = new HashMap<String, ServerHealth>();
+        for(String url : urls){
+            ServerHealth h = health.get(url);
+            snapshot.put(url, h == null ? new ServerHealth() : h.copy());
+        }
+        List<String> order = new ArrayList<String>(Arrays.asList(urls));
+        Collections.sort(order, new Comparator<String>(){
+            @Override
+            public int compare(String a, String b){
+                ServerHealth x = snapshot.get(a);
+                ServerHealth y = snapshot.get(b);
+                boolean xDown = x.isUnreachable(now);
+                boolean yDown = y.isUnreachable(now);
+                if(xDown != yDown){
+                    return xDown ? 1 : -1;
+                }
+                return Long.compare(x.averageNanos, y.averageNanos);
+            }
+        });
+        return order;
+    }
+    
+    private synchronized void answered(String url, long nanos){
+        ServerHealth h = health(url);
+        h.averageNanos = h.averageNanos == Long.MAX_VALUE ? nanos : (h.averageNanos * 3 + nanos) / 4;
+        h.unreachableSince = 0;
+    }
+    
+    private synchronized void unreachable(String url){
+        health(url).unreachableSince = System.currentTimeMillis();
+    }
+    
+    private ServerHealth health(String url){
+        ServerHealth h = health.get(url);
+        if(h == null){
+            h = new ServerHealth();
+            health.put(url, h);
+        }
+        return h;
+    }
+    
+    /**
+     * Records a bind for Flight Recorder, without the account or password.
+     * @param failure - why the bind failed, or null if it succeeded
+     */
+    private void commit(LdapBindEvent event, String url, NamingException failure){
+        if(event.shouldCommit()){
+            event.domain = domainName;
+            event.server = url;
+            event.succeeded = failure == null;
+            event.failure = failure == null ? null : failure.getClass().getName();
+            event.commit();
+        }
+    }
+    
+    /**
+     * Binds to one server as the user and looks for the user in the group.
+     * @return true if the user is a member
+     * @throws NamingException if the bind or the search fails
+     */
+    private boolean search(String url, String user, String pass) throws NamingException{
     	Hashtable<String, String> env = new Hashtable<String, String>();
     	env.put(Context.INITIAL_CONTEXT_FACTORY, CONTEXT_FACTORY_CLASS);
-    	env.put(Context.PROVIDER_URL, ldapServerUrls[lastLdapUrlIndex]);
+    	env.put(Context.PROVIDER_URL, url);
+    	env.put(Context.SECURITY_AUTHENTICATION, "simple");
     	env.put(Context.SECURITY_PRINCIPAL, user + "@" + domainName);
     	env.put(Context.SECURITY_CREDENTIALS, pass);
+    	// never pooled, so the directory checks the password and account every time
+    	env.put("com.sun.jndi.ldap.connect.pool", "false");
+    	env.put("com.sun.jndi.ldap.connect.timeout", CONNECT_TIMEOUT_MILLIS);
+    	env.put("com.sun.jndi.ldap.read.timeout", READ_TIMEOUT_MILLIS);
     	 
     	DirContext ctx;
-    	int retryCount = 0;
-    	int currentLdapUrlIndex = lastLdapUrlIndex;
-    	do{
-    		if(retryCount > 0){
-    			env.remove(Context.PROVIDER_URL);
-    			env.put(Context.PROVIDER_URL, ldapServerUrls[currentLdapUrlIndex]);
-    		}
-    		retryCount++;
-    	try {
+    	long began = System.nanoTime();
+    	LdapBindEvent event = new LdapBindEvent();
+    	event.begin();
+    	try{
     	    //Authenticate the logon user
     	    ctx = new InitialDirContext(env);
+    	}catch(NamingException e){
+    	    metrics.recordBind(System.nanoTime() - began, false);
+    	    commit(event, url, e);
+    	    throw e;
+    	}
+    	metrics.recordBind(System.nanoTime() - began, true);
+    	commit(event, url, null);
+    	try {
     	    String searchBase = "DC=FLH,DC=LOCAL";
     	    
     	    // Perform an exact group match with the "memberOf" attribute.
@@ -105,28 +485,15 @@ public class MemberOfAuth{
     	    SearchControls sCtrl = new SearchControls();
     	    sCtrl.setSearchScope(SearchControls.SUBTREE_SCOPE);
     	 
-    	    NamingEnumeration answer = ctx.search(searchBase, searchFilter.toString(), sCtrl);
-    	    boolean passes = false;
-    	 
-    	    if (answer.hasMoreElements()) {
-    	        passes = true;
-    	    }
-    	 
-    	    if (passes) {
-    	        // The user belongs to the group. Do something...
-    	    	return true;
+    	    NamingEnumeration<SearchResult> answer = ctx.search(searchBase, searchFilter.toString(), sCtrl);
+    	    try{
+    	        return answer.hasMoreElements();
+    	    }finally{
+    	        answer.close();
     	    }
-    	} catch(CommunicationException exp){
-            // if the exception of type communication we can assume the AD is not reachable hence retry can be attempted with next available AD
-            currentLdapUrlIndex++;
-        }catch(AuthenticationException exp){
-       	 	return false;
-        }catch(Throwable throwable){
-        	return false;
-        }
-    	}while(retryCount < ldapServerUrls.length);
-    	
-    	return false;
+    	}finally{
+    	    ctx.close();
+    	}
     }
     public SearchResult findAccountByAccountName(DirContext ctx, String ldapSearchBase, String accountName) throws NamingException {
 
@@ -149,4 +516,25 @@ public class MemberOfAuth{
         return searchResult;
     }
 
+    /**
+     * What has been seen of one controller.
+     */
+    private static class ServerHealth {
+        // moving average of bind and search time, MAX_VALUE until measured
+        long averageNanos = Long.MAX_VALUE;
+        // when the controller last could not be reached, 0 if it answered since
+        long unreachableSince;
+        
+        boolean isUnreachable(long now){
+            return unreachableSince != 0 && now - unreachableSince < UNREACHABLE_MILLIS;
+        }
+        
+        ServerHealth copy(){
+            ServerHealth h = new ServerHealth();
+            h.averageNanos = averageNanos;
+            h.unreachableSince = unreachableSince;
+            return h;
+        }
+    }
+
 }
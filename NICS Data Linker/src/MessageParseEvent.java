@@ -0,0 +1,31 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for streaming one file and extracting its data,
+ * including the reads it waits on. Only the file's name and counts are
+ * recorded, never a message.
+ */
+@Name("nics.MessageParse")
+@Label("HL7 Message Parse")
+@Category({"NICS Data Linker", "Files"})
+@Description("The messages of one NICS, ACK or NACK file split and parsed")
+public class MessageParseEvent extends Event {
+
+	@Label("File")
+	String file;
+
+	@Label("Type")
+	@Description("What the file was parsed as: NICS, ACK or NACK")
+	String type;
+
+	@Label("Messages")
+	int messages;
+
+	@Label("Records")
+	@Description("NICS records or Meditech IDs extracted from the messages")
+	int records;
+}
@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * The kinds of HL7 files the application processes, along with the
+ * {@link FileReader} extraction that applies to each of them.
+ */
+public enum MessageType {
+	/** Admissions and updates sent to NICS, extracted in 3 mod form */
+	NICS {
+		@Override
+		public ArrayList<String> extract(FileReader fr, Iterator<String> messages){
+			return fr.getNicsData(messages);
+		}
+	},
+	/** Acknowledgements returned by NICS, extracted as Meditech IDs */
+	ACK {
+		@Override
+		public ArrayList<String> extract(FileReader fr, Iterator<String> messages){
+			return fr.getAckData(messages);
+		}
+	},
+	/** Rejections returned by NICS, extracted as Meditech IDs */
+	NACK {
+		@Override
+		public ArrayList<String> extract(FileReader fr, Iterator<String> messages){
+			return fr.getNackData(messages);
+		}
+	};
+
+	/**
+	 * Works out which kind of message this is using the same markers
+	 * {@link FileReader} relies on: "ADT^" for a NICS message, "ERR" for a
+	 * NACK and "ACK^" for an ACK. "ADT^" is checked first because a patient
+	 * name such as FERRIS puts "ERR" in a NICS message, while ACKs and NACKs
+	 * carry "ACK^" as their message type instead of "ADT^".
+	 * @param message - the message text
+	 * @return the message type, or null if it is none of them
+	 */
+	public static MessageType classify(CharSequence message){
+		String text = message.toString();
+		if(text.contains("ADT^")){
+			return NICS;
+		}
+		if(text.contains("ERR")){
+			return NACK;
+		}
+		if(text.contains("ACK^")){
+			return ACK;
+		}
+		return null;
+	}
+
+	/**
+	 * Pulls this type's data out of a stream of messages.
+	 * @param fr - the reader doing the extraction
+	 * @param messages - the messages of one file
+	 * @return the extracted data
+	 */
+	public abstract ArrayList<String> extract(FileReader fr, Iterator<String> messages);
+}
@@ -0,0 +1,285 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+import com.healthmarketscience.jackcess.Cursor;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.Table;
+
+/**
+ * Table model that shows the whole Patients table without loading it. Rows
+ * are read a page at a time through a Jackcess cursor only when the table
+ * asks for them, and a bounded number of recently used pages are kept, so the
+ * first screen appears right away and memory stays flat however large the
+ * table has grown.
+ *
+ * A page is read by jumping straight to a savepoint kept just before its
+ * first row. Opening the model only takes the savepoint for the first page.
+ * {@link #findPages()} then walks a second cursor over the rest of the table
+ * on its own thread, without reading any values, and the rows of each page
+ * are added to the model as its savepoint is found. Until the walk finishes
+ * the row count is the number of rows reachable so far; afterwards it is the
+ * number of rows in the table.
+ *
+ * The model reads through its own read-only handle on the database so paging
+ * never shares a Jackcess instance with work running in background tasks.
+ * The page reads on the event dispatch thread and the walk take turns on that
+ * handle a page at a time. Call {@link #close()} when the view goes away.
+ */
+@SuppressWarnings("serial")
+public class PagedPatientTableModel extends AbstractTableModel implements Closeable {
+
+	public static final int DEFAULT_PAGE_SIZE = 200;
+	public static final int DEFAULT_MAX_PAGES = 50;
+
+	private static final String[] header = {"Patient Name", "Meditech ID", "Code", "Date/Time", "Acknowledged"};
+	private static final List<String> COLUMNS = Arrays.asList("Patient_Name", "Meditech_ID", "Admit_Update", "Date/Time", "Acknowledged");
+
+	// how many pages the walk finds between updates of the row count
+	private static final int PUBLISH_PAGES = 50;
+
+	private final Database db;
+	private final Table patientsTable;
+	private final Cursor cursor;
+	private final int tableRowCount;
+	private final int pageSize;
+	// guards the database handle, which the walk and the page reads share
+	private final Object lock = new Object();
+	private boolean closed;
+
+	// savepoint just before the first row of each page, filled in by the walk
+	private final Cursor.Savepoint[] pageStarts;
+	private final Map<Integer, String[][]> pages;
+	// rows whose pages have been found, only touched on the event dispatch thread
+	private int rowCount;
+
+	/**
+	 * Opens the database read-only with the default page size and cache.
+	 * @param filePath - the file path to the MS Access database
+	 * @throws IOException
+	 */
+	public PagedPatientTableModel(String filePath) throws IOException{
+		this(filePath, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+	}
+
+	/**
+	 * Opens the database read-only. Only the first page can be read until
+	 * {@link #findPages()} is called.
+	 * @param filePath - the file path to the MS Access database
+	 * @param pageSize - rows read per page
+	 * @param maxPages - how many pages are cached before the least recently used is dropped
+	 * @throws IOException
+	 */
+	public PagedPatientTableModel(String filePath, int pageSize, final int maxPages) throws IOException{
+		this.pageSize = pageSize;
+		this.db = new DatabaseBuilder(new File(filePath)).setReadOnly(true).open();
+		this.patientsTable = db.getTable("Patients");
+		if(patientsTable == null){
+			db.close();
+			throw new IOException("Could not find the Patients table");
+		}
+		this.cursor = CursorBuilder.createCursor(patientsTable);
+		this.tableRowCount = patientsTable.getRowCount();
+		this.pageStarts = new Cursor.Savepoint[(tableRowCount + pageSize - 1) / pageSize];
+		if(pageStarts.length > 0){
+			cursor.beforeFirst();
+			pageStarts[0] = cursor.getSavepoint();
+		}
+		this.rowCount = Math.min(pageSize, tableRowCount);
+		this.pages = new LinkedHashMap<Integer, String[][]>(maxPages + 1, 0.75f, true){
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, String[][]> eldest){
+				return size() > maxPages;
+			}
+		};
+	}
+
+	@Override
+	public int getRowCount(){
+		return rowCount;
+	}
+
+	@Override
+	public int getColumnCount(){
+		return header.length;
+	}
+
+	@Override
+	public String getColumnName(int col){
+		return header[col];
+	}
+
+	@Override
+	public Class<?> getColumnClass(int col){
+		return String.class;
+	}
+
+	@Override
+	public boolean isCellEditable(int row, int col){
+		return false;
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int columnIndex){
+		String[][] page = page(rowIndex / pageSize);
+		int offset = rowIndex % pageSize;
+		if(page == null || offset >= page.length){
+			return "";
+		}
+		return page[offset][columnIndex];
+	}
+
+	/**
+	 * @return how many pages are currently held in memory
+	 */
+	public int getCachedPageCount(){
+		return pages.size();
+	}
+
+	/**
+	 * Returns a page, reading it from the database if it is not cached.
+	 * @param pageIndex - the page number
+	 * @return the page's rows, or null if it could not be read
+	 */
+	private String[][] page(int pageIndex){
+		Integer key = Integer.valueOf(pageIndex);
+		String[][] page = pages.get(key);
+		if(page == null){
+			try{
+				page = readPage(pageIndex);
+			}catch(IOException e){
+				return null;
+			}
+			pages.put(key, page);
+		}
+		return page;
+	}
+
+	/**
+	 * Starts walking the rest of the table on a background thread. The rows
+	 * of each page are added to the model once the page's start is found.
+	 */
+	public void findPages(){
+		Thread walker = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				walk();
+			}
+		}, "patient-history-pages");
+		walker.setDaemon(true);
+		walker.start();
+	}
+
+	/**
+	 * Walks a cursor of its own over the table a page at a time, keeping a
+	 * savepoint just before the first row of each page. The handle is only
+	 * held for one page at a time so page reads are not held up.
+	 */
+	private void walk(){
+		int found = Math.min(1, pageStarts.length);
+		long rowsFound = Math.min(pageSize, tableRowCount);
+		try{
+			Cursor walker;
+			synchronized(lock){
+				if(closed){
+					return;
+				}
+				walker = CursorBuilder.createCursor(patientsTable);
+				walker.beforeFirst();
+			}
+			while(found < pageStarts.length){
+				synchronized(lock){
+					if(closed){
+						return;
+					}
+					int moved = walker.moveNextRows(pageSize);
+					if(moved < pageSize){
+						// fewer rows than the table reported when it was opened
+						rowsFound = (long) (found - 1) * pageSize + moved;
+						break;
+					}
+					pageStarts[found] = walker.getSavepoint();
+				}
+				found++;
+				rowsFound = Math.min((long) found * pageSize, tableRowCount);
+				if(found % PUBLISH_PAGES == 0){
+					publish((int) rowsFound);
+				}
+			}
+		}catch(IOException e){
+			// the pages found so far can still be read
+		}
+		publish((int) rowsFound);
+	}
+
+	/**
+	 * Sets the row count on the event dispatch thread and tells the table.
+	 */
+	private void publish(final int rows){
+		SwingUtilities.invokeLater(new Runnable(){
+			@Override
+			public void run(){
+				int before = rowCount;
+				rowCount = rows;
+				if(rows > before){
+					fireTableRowsInserted(before, rows - 1);
+				}else if(rows < before){
+					fireTableRowsDeleted(rows, before - 1);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Jumps to the start of the page and reads it.
+	 */
+	private String[][] readPage(int pageIndex) throws IOException{
+		synchronized(lock){
+			if(closed){
+				return new String[0][];
+			}
+			return readPageAt(pageIndex);
+		}
+	}
+
+	private String[][] readPageAt(int pageIndex) throws IOException{
+		cursor.restoreSavepoint(pageStarts[pageIndex]);
+		int rows = Math.min(pageSize, rowCount - pageIndex * pageSize);
+		String[][] page = new String[Math.max(rows, 0)][];
+		for(int i = 0; i < page.length; i++){
+			Row row = cursor.getNextRow(COLUMNS);
+			if(row == null){
+				return Arrays.copyOf(page, i);
+			}
+			String[] values = new String[COLUMNS.size()];
+			for(int c = 0; c < values.length; c++){
+				Object value = row.get(COLUMNS.get(c));
+				values[c] = value == null ? "" : value.toString();
+			}
+			page[i] = values;
+		}
+		return page;
+	}
+
+	/**
+	 * Releases the read-only database handle.
+	 */
+	@Override
+	public void close() throws IOException{
+		pages.clear();
+		synchronized(lock){
+			closed = true;
+			db.close();
+		}
+	}
+}
@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads and parses a set of NICS, ACK or NACK files on a bounded thread pool.
+ * Only reading and parsing happen in parallel; the results are handed back to
+ * the caller so that database writes stay on a single thread. A file that
+ * cannot be read is reported without stopping the others.
+ *
+ * {@link #stream(String[], MessageType, DataSink, ProgressListener)} hands
+ * each file's data to a single consumer, in the order the files were given,
+ * as soon as it and every file before it are parsed, so the consumer can
+ * write the early files while the later ones are still being parsed. At most
+ * {@link #getMaxPendingFiles()} files are held at once, counting the one the
+ * consumer is working on; when it falls behind, no new file is started until
+ * it has finished with one, which keeps memory bounded however many files
+ * are selected.
+ */
+public class ParallelIngestor {
+
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+	private final int threads;
+	private int maxPendingFiles;
+
+	/**
+	 * Creates an ingestor that uses up to one thread per available processor.
+	 */
+	public ParallelIngestor(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads - the most files that will be parsed at once
+	 */
+	public ParallelIngestor(int threads){
+		if(threads < 1){
+			throw new IllegalArgumentException("At least one thread is required");
+		}
+		this.threads = threads;
+		this.maxPendingFiles = threads * 2;
+	}
+
+	/**
+	 * Sets how many files {@link #stream(String[], MessageType, DataSink, ProgressListener)}
+	 * may hold at once: parsed or being parsed and not yet taken by the
+	 * consumer, plus the one the consumer is working on.
+	 * @param maxPendingFiles - at least 1; the default is twice the thread count
+	 */
+	public void setMaxPendingFiles(int maxPendingFiles){
+		if(maxPendingFiles < 1){
+			throw new IllegalArgumentException("At least one pending file is required");
+		}
+		this.maxPendingFiles = maxPendingFiles;
+	}
+
+	public int getMaxPendingFiles(){
+		return maxPendingFiles;
+	}
+
+	/**
+	 * Parses the files on the pool and passes each file's data to the sink on
+	 * the calling thread, in file order. Parsing runs ahead of the sink by at
+	 * most {@link #getMaxPendingFiles()} files, counting the one the sink is
+	 * working on. A file that cannot be read is
+	 * reported in the result and the rest carry on. If cancellation is
+	 * requested no further files are passed on.
+	 *
+	 * @param filePaths - the files to process
+	 * @param type - the kind of data to extract from them
+	 * @param sink - receives each file's data; never called concurrently
+	 * @param listener - receives progress and may request cancellation
+	 * @return the files processed and any per-file failures; the data has already gone to the sink
+	 * @throws IOException if the sink fails, which stops the run
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public Result stream(String[] filePaths, MessageType type, DataSink sink, ProgressListener listener) throws IOException, InterruptedException{
+		Result result = new Result();
+		if(filePaths.length == 0){
+			return result;
+		}
+		int poolSize = Math.min(threads, filePaths.length);
+		ExecutorService pool = Executors.newFixedThreadPool(poolSize, new IngestThreadFactory());
+		// parses started but not yet taken by the sink, oldest first
+		Deque<Future<ArrayList<String>>> pending = new ArrayDeque<Future<ArrayList<String>>>(maxPendingFiles);
+		int submitted = 0;
+		try{
+			while(submitted < filePaths.length && pending.size() < maxPendingFiles){
+				pending.add(submit(pool, filePaths[submitted++], type));
+			}
+			for(int i = 0; i < filePaths.length; i++){
+				listener.progress("Processing files", i, filePaths.length);
+				if(listener.isCancelRequested()){
+					break;
+				}
+				try{
+					sink.accept(filePaths[i], pending.remove().get());
+					result.files.add(filePaths[i]);
+					result.filesProcessed++;
+				}catch(ExecutionException e){
+					Throwable cause = e.getCause() != null ? e.getCause() : e;
+					result.failures.put(filePaths[i], cause);
+				}
+				// only start another file once this one has been let go, so no
+				// more than the pending limit are ever held at once
+				if(submitted < filePaths.length){
+					pending.add(submit(pool, filePaths[submitted++], type));
+				}
+			}
+			listener.progress("Processing files", result.filesProcessed + result.failures.size(), filePaths.length);
+		}finally{
+			pool.shutdownNow();
+		}
+		return result;
+	}
+
+	private static Future<ArrayList<String>> submit(ExecutorService pool, final String filePath, final MessageType type){
+		return pool.submit(new Callable<ArrayList<String>>(){
+			@Override
+			public ArrayList<String> call() throws IOException{
+				return parseFile(filePath, type);
+			}
+		});
+	}
+
+	/**
+	 * Receives the data of one file at a time from
+	 * {@link ParallelIngestor#stream(String[], MessageType, DataSink, ProgressListener)}.
+	 */
+	public interface DataSink {
+		/**
+		 * @param filePath - the file the data came from
+		 * @param data - the data extracted from it
+		 * @throws IOException if the data cannot be used, which stops the run
+		 */
+		void accept(String filePath, ArrayList<String> data) throws IOException;
+	}
+
+	/**
+	 * @param into - the collection to add every file's data to
+	 * @return a sink that only gathers the data, for ACK IDs which are all
+	 * needed before the table can be scanned
+	 */
+	public static DataSink collectInto(final Collection<String> into){
+		return new DataSink(){
+			@Override
+			public void accept(String filePath, ArrayList<String> data){
+				into.addAll(data);
+			}
+		};
+	}
+
+	/**
+	 * @param into - gets each file's data under the file's path, in file order
+	 * @return a sink that gathers the data and keeps track of where it came
+	 * from, for ACK files that are recorded only if they matched a row
+	 */
+	public static DataSink collectByFile(final Map<String, ArrayList<String>> into){
+		return new DataSink(){
+			@Override
+			public void accept(String filePath, ArrayList<String> data){
+				into.put(filePath, data);
+			}
+		};
+	}
+
+	/**
+	 * Streams a single file through the {@link FileReader}.
+	 */
+	static ArrayList<String> parseFile(String filePath, MessageType type) throws IOException{
+		return new FileReader().extract(filePath, type);
+	}
+
+	/**
+	 * Outcome of a parallel ingest.
+	 */
+	public static class Result {
+		private final List<String> files = new ArrayList<String>();
+		private final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+		private int filesProcessed;
+
+		/**
+		 * @return the files that failed, in file order, with the reason they failed
+		 */
+		public Map<String, Throwable> getFailures(){
+			return Collections.unmodifiableMap(failures);
+		}
+
+		/**
+		 * @return the files that were parsed successfully, in file order
+		 */
+		public List<String> getProcessedFiles(){
+			return Collections.unmodifiableList(files);
+		}
+
+		public int getFilesProcessed(){
+			return filesProcessed;
+		}
+
+		/**
+		 * @return a readable list of the failed files, or an empty string if none failed
+		 */
+		public String describeFailures(){
+			StringBuilder sb = new StringBuilder();
+			for(Map.Entry<String, Throwable> failure : failures.entrySet()){
+				sb.append(failure.getKey()).append(": ").append(failure.getValue().getMessage()).append('\n');
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Names the pool threads and keeps them from holding the JVM open.
+	 */
+	private static class IngestThreadFactory implements ThreadFactory {
+		private final int pool = POOL_COUNT.incrementAndGet();
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r){
+			Thread t = new Thread(r, "nics-ingest-" + pool + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
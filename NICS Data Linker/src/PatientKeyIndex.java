@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.healthmarketscience.jackcess.Cursor;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.Table;
+
+/**
+ * The set of Meditech ID and Admit/Update code pairs already in the Patients
+ * table, so a NICS record can be recognised as a repeat without touching the
+ * database. Loaded with one pass over just those two columns and kept up to
+ * date by {@link PatientWriter} as rows are added.
+ */
+public class PatientKeyIndex {
+
+	// separates the Meditech ID from the code; neither can contain it
+	private static final char SEPARATOR = '\u001F';
+
+	private final Set<String> keys;
+
+	private PatientKeyIndex(Set<String> keys){
+		this.keys = keys;
+	}
+
+	/**
+	 * Reads every key in the Patients table.
+	 * @param patientsTable - the Patients table
+	 * @return the loaded index
+	 * @throws IOException
+	 */
+	public static PatientKeyIndex load(Table patientsTable) throws IOException{
+		Set<String> keys = new HashSet<String>(patientsTable.getRowCount() * 2);
+		Cursor cursor = CursorBuilder.createCursor(patientsTable);
+		List<String> columns = Arrays.asList("Meditech_ID", "Admit_Update");
+		long start = PipelineMetrics.now();
+		int scanned = 0;
+		Row row;
+		while((row = cursor.getNextRow(columns)) != null){
+			scanned++;
+			Object meditechId = row.get("Meditech_ID");
+			Object code = row.get("Admit_Update");
+			keys.add(key(meditechId == null ? "" : meditechId.toString(), code == null ? "" : code.toString()));
+		}
+		PipelineMetrics.scanned(scanned, 0, PipelineMetrics.since(start));
+		return new PatientKeyIndex(keys);
+	}
+
+	/**
+	 * @return true if a row with this Meditech ID and code is already in the table
+	 */
+	public boolean contains(String meditechId, String code){
+		return keys.contains(key(meditechId, code));
+	}
+
+	/**
+	 * Records that a row with this Meditech ID and code has been added.
+	 * @return true if the key was not already present
+	 */
+	boolean add(String meditechId, String code){
+		return keys.add(key(meditechId, code));
+	}
+
+	/**
+	 * Forgets a key, for rows that were queued but never written.
+	 */
+	void remove(String meditechId, String code){
+		keys.remove(key(meditechId, code));
+	}
+
+	/**
+	 * @return the number of distinct keys
+	 */
+	public int size(){
+		return keys.size();
+	}
+
+	/**
+	 * @return the Meditech ID and code as the single key they are held under
+	 */
+	static String key(String meditechId, String code){
+		return meditechId + SEPARATOR + code;
+	}
+}
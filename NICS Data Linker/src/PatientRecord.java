@@ -0,0 +1,54 @@
+/**
+ * A single row of the Patients table as shown in the reports.
+ */
+public class PatientRecord {
+
+	private final int patientId;
+	private final String name;
+	private final String meditechId;
+	private final String code;
+	private final String dateTime;
+
+	/**
+	 * @param patientId - the Patient_ID auto number
+	 * @param name - the patient name
+	 * @param meditechId - the Meditech ID
+	 * @param code - the admit/update code
+	 * @param dateTime - when the row was written
+	 */
+	public PatientRecord(int patientId, String name, String meditechId, String code, String dateTime){
+		this.patientId = patientId;
+		this.name = name;
+		this.meditechId = meditechId;
+		this.code = code;
+		this.dateTime = dateTime;
+	}
+
+	public int getPatientId(){
+		return patientId;
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public String getMeditechId(){
+		return meditechId;
+	}
+
+	public String getCode(){
+		return code;
+	}
+
+	public String getDateTime(){
+		return dateTime;
+	}
+
+	/**
+	 * @return the record as the comma separated name, Meditech ID, code and date/time
+	 */
+	@Override
+	public String toString(){
+		return name + "," + meditechId + "," + code + "," + dateTime;
+	}
+}
@@ -0,0 +1,60 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Patients table split into the groups the reports are built from. Every
+ * row lands in exactly one group: acknowledged rows, rows that are neither
+ * acknowledged nor resolved, and rows whose NACK has been resolved.
+ */
+public class PatientReport {
+
+	private final ArrayList<PatientRecord> acknowledged = new ArrayList<PatientRecord>();
+	private final ArrayList<PatientRecord> unresolved = new ArrayList<PatientRecord>();
+	private final ArrayList<PatientRecord> resolved = new ArrayList<PatientRecord>();
+	private boolean complete;
+
+	void addAcknowledged(PatientRecord record){
+		acknowledged.add(record);
+	}
+
+	void addUnresolved(PatientRecord record){
+		unresolved.add(record);
+	}
+
+	void addResolved(PatientRecord record){
+		resolved.add(record);
+	}
+
+	void setComplete(boolean complete){
+		this.complete = complete;
+	}
+
+	/**
+	 * @return the acknowledged patients
+	 */
+	public List<PatientRecord> getAcknowledged(){
+		return Collections.unmodifiableList(acknowledged);
+	}
+
+	/**
+	 * @return the patients that are neither acknowledged nor resolved
+	 */
+	public List<PatientRecord> getUnresolved(){
+		return Collections.unmodifiableList(unresolved);
+	}
+
+	/**
+	 * @return the non-acknowledged patients whose NACK has been resolved
+	 */
+	public List<PatientRecord> getResolved(){
+		return Collections.unmodifiableList(resolved);
+	}
+
+	/**
+	 * @return false if the scan was cancelled before reaching the end of the table
+	 */
+	public boolean isComplete(){
+		return complete;
+	}
+}
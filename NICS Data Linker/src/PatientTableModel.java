@@ -0,0 +1,124 @@
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model for the patient reports that keeps each column in its own
+ * array. The arrays are filled once when the report is loaded, so every cell
+ * lookup made while painting, sorting or filtering is a plain array read with
+ * no parsing or allocation, and patient names containing commas are shown
+ * intact.
+ */
+@SuppressWarnings("serial")
+public class PatientTableModel extends AbstractTableModel {
+
+	public static final int NAME = 0;
+	public static final int MEDITECH_ID = 1;
+	public static final int CODE = 2;
+	public static final int DATE_TIME = 3;
+
+	private static final String[] header = {"Patient Name", "Meditech ID", "Code", "Date/Time"};
+
+	private final int[] patientIds;
+	private final String[] names;
+	private final String[] meditechIds;
+	private final String[] codes;
+	private final String[] dateTimes;
+
+	/**
+	 * Copies the records into column arrays.
+	 * @param records - the report rows
+	 */
+	public PatientTableModel(List<PatientRecord> records){
+		int rows = records.size();
+		patientIds = new int[rows];
+		names = new String[rows];
+		meditechIds = new String[rows];
+		codes = new String[rows];
+		dateTimes = new String[rows];
+		for(int i = 0; i < rows; i++){
+			PatientRecord record = records.get(i);
+			patientIds[i] = record.getPatientId();
+			names[i] = record.getName();
+			meditechIds[i] = record.getMeditechId();
+			codes[i] = record.getCode();
+			dateTimes[i] = record.getDateTime();
+		}
+	}
+
+	/**
+	 * Builds the model from comma separated name, Meditech ID, code and
+	 * date/time strings. Each string is split once here rather than on every
+	 * cell lookup. Anything after the third comma belongs to the date/time.
+	 * @param rows - the comma separated rows
+	 * @return the model
+	 */
+	public static PatientTableModel fromCsv(List<String> rows){
+		int count = rows.size();
+		PatientTableModel model = new PatientTableModel(count);
+		for(int i = 0; i < count; i++){
+			String[] token = rows.get(i).split(",", header.length);
+			model.patientIds[i] = -1;
+			model.names[i] = token.length > NAME ? token[NAME] : "";
+			model.meditechIds[i] = token.length > MEDITECH_ID ? token[MEDITECH_ID] : "";
+			model.codes[i] = token.length > CODE ? token[CODE] : "";
+			model.dateTimes[i] = token.length > DATE_TIME ? token[DATE_TIME] : "";
+		}
+		return model;
+	}
+
+	private PatientTableModel(int rows){
+		patientIds = new int[rows];
+		names = new String[rows];
+		meditechIds = new String[rows];
+		codes = new String[rows];
+		dateTimes = new String[rows];
+	}
+
+	/**
+	 * @param rowIndex - the model row
+	 * @return the Patient_ID of the row, or -1 if it is not known
+	 */
+	public int getPatientId(int rowIndex){
+		return patientIds[rowIndex];
+	}
+
+	@Override
+	public int getColumnCount(){
+		return header.length;
+	}
+
+	@Override
+	public int getRowCount(){
+		return names.length;
+	}
+
+	@Override
+	public Object getValueAt(int rowIndex, int columnIndex){
+		switch(columnIndex){
+		case NAME:
+			return names[rowIndex];
+		case MEDITECH_ID:
+			return meditechIds[rowIndex];
+		case CODE:
+			return codes[rowIndex];
+		default:
+			return dateTimes[rowIndex];
+		}
+	}
+
+	@Override
+	public String getColumnName(int col){
+		return header[col];
+	}
+
+	@Override
+	public Class<?> getColumnClass(int col){
+		return String.class;
+	}
+
+	@Override
+	public boolean isCellEditable(int row, int col){
+		return false;
+	}
+}
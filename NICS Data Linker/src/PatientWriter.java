@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.healthmarketscience.jackcess.Column;
+import com.healthmarketscience.jackcess.Cursor;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.Index;
+import com.healthmarketscience.jackcess.IndexCursor;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.Table;
+
+/**
+ * Writes NICS records to the Patients table. New rows are added in batches
+ * that share one timestamp. A record whose Meditech ID and Admit/Update code
+ * are already in the table is a repeat, from a file that was processed again
+ * or an admission sent twice, and is handled according to the {@link Mode}:
+ * added anyway, skipped, or used to refresh the name and time on the existing
+ * rows. Repeats are recognised from a {@link PatientKeyIndex} in memory and
+ * existing rows are found through the Meditech_ID index.
+ */
+public class PatientWriter {
+
+	/**
+	 * What to do with a record that is already in the table.
+	 */
+	public enum Mode {
+		/** add every record, the way NICS files have always been written */
+		APPEND,
+		/** leave the existing row alone */
+		SKIP,
+		/** set the existing rows' name and time from the record */
+		UPDATE
+	}
+
+	private final Table patientsTable;
+	private final Index meditechIndex;
+	private final PatientKeyIndex keys;
+
+	/**
+	 * @param patientsTable - the Patients table
+	 * @param meditechIndex - the table's Meditech_ID index, or null to search without it
+	 * @param keys - the keys in the table, kept up to date as rows are added; may be null in APPEND mode
+	 */
+	public PatientWriter(Table patientsTable, Index meditechIndex, PatientKeyIndex keys){
+		this.patientsTable = patientsTable;
+		this.meditechIndex = meditechIndex;
+		this.keys = keys;
+	}
+
+	/**
+	 * Writes the records, reporting progress after each batch. If cancellation
+	 * is requested no further batches are started and the batches already
+	 * written are kept.
+	 *
+	 * @param nicsData - the processed NICS data in 3 modulo form
+	 * @param mode - what to do with records that are already in the table
+	 * @param batchSize - rows per insert
+	 * @param listener - receives progress and may request cancellation
+	 * @return counts of inserted, updated and skipped records
+	 * @throws IOException if a batch or an update cannot be written
+	 */
+	public Result write(ArrayList<String> nicsData, Mode mode, int batchSize, ProgressListener listener) throws IOException{
+		if(mode != Mode.APPEND && keys == null){
+			throw new IllegalArgumentException("A key index is needed to " + mode.name().toLowerCase() + " repeats");
+		}
+		Result result = new Result();
+		int total = nicsData.size() / 3;
+		listener.progress("Writing rows", 0, total);
+		DateFormat dateFormat = new SimpleDateFormat();
+		List<Object[]> batch = new ArrayList<Object[]>(batchSize);
+		// rows in the current batch by key, so a repeat inside one batch updates the queued row
+		Map<String, Object[]> queued = new HashMap<String, Object[]>();
+		// rows in the current batch whose keys it added to the index, the only keys to take back out
+		List<Object[]> added = new ArrayList<Object[]>(batchSize);
+		String timestamp = null;
+		try{
+			for(int i = 0; i + 2 < nicsData.size(); i += 3){
+				if(timestamp == null){
+					timestamp = dateFormat.format(new Date());
+				}
+				String meditechId = nicsData.get(i);
+				String name = nicsData.get(i+1);
+				String code = nicsData.get(i+2);
+				if(mode == Mode.APPEND || !keys.contains(meditechId, code)){
+					Object[] row = new Object[]{Column.AUTO_NUMBER, name, meditechId, "", code, timestamp};
+					batch.add(row);
+					if(keys != null){
+						if(keys.add(meditechId, code)){
+							added.add(row);
+						}
+						queued.put(PatientKeyIndex.key(meditechId, code), row);
+					}
+				}else if(mode == Mode.SKIP){
+					result.skipped++;
+				}else{
+					Object[] row = queued.get(PatientKeyIndex.key(meditechId, code));
+					if(row != null){
+						row[1] = name;
+						row[5] = timestamp;
+						result.updated++;
+					}else{
+						long start = PipelineMetrics.now();
+						boolean found = update(meditechId, code, name, timestamp);
+						if(found){
+							result.updated++;
+						}else{
+							result.skipped++;
+						}
+						PipelineMetrics.written(found ? 1 : 0, PipelineMetrics.since(start));
+					}
+				}
+				boolean last = i + 5 >= nicsData.size();
+				if(batch.size() == batchSize || (last && batch.size() > 0)){
+					if(listener.isCancelRequested()){
+						forget(added);
+						break;
+					}
+					long start = PipelineMetrics.now();
+					BatchInsertEvent event = new BatchInsertEvent();
+					event.begin();
+					patientsTable.addRows(batch);
+					if(event.shouldCommit()){
+						event.rows = batch.size();
+						event.commit();
+					}
+					PipelineMetrics.written(batch.size(), PipelineMetrics.since(start));
+					result.inserted += batch.size();
+					batch.clear();
+					queued.clear();
+					added.clear();
+					timestamp = null;
+					listener.progress("Writing rows", result.inserted + result.updated + result.skipped, total);
+				}else if(last){
+					listener.progress("Writing rows", result.inserted + result.updated + result.skipped, total);
+				}
+			}
+		}catch(IOException e){
+			// the rows still queued were never written, so their keys must not stay in the index
+			forget(added);
+			throw e;
+		}catch(RuntimeException e){
+			forget(added);
+			throw e;
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the name and time on every existing row with the Meditech ID and code.
+	 * @return true if a row was found
+	 */
+	private boolean update(String meditechId, String code, String name, String timestamp) throws IOException{
+		Column nameCol = patientsTable.getColumn("Patient_Name");
+		Column timeCol = patientsTable.getColumn("Date/Time");
+		boolean found = false;
+		if(meditechIndex != null){
+			IndexCursor cursor = CursorBuilder.createCursor(meditechIndex);
+			for(Row row : cursor.newEntryIterable(meditechId)){
+				if(code.equals(row.get("Admit_Update"))){
+					cursor.setCurrentRowValue(nameCol, name);
+					cursor.setCurrentRowValue(timeCol, timestamp);
+					found = true;
+				}
+			}
+		}else{
+			Cursor cursor = CursorBuilder.createCursor(patientsTable);
+			Map<String, Object> match = new HashMap<String, Object>();
+			match.put("Meditech_ID", meditechId);
+			match.put("Admit_Update", code);
+			while(cursor.findNextRow(match)){
+				cursor.setCurrentRowValue(nameCol, name);
+				cursor.setCurrentRowValue(timeCol, timestamp);
+				found = true;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Takes the keys of rows that were queued but not written back out of the
+	 * index. Only rows whose keys the batch added are given, so keys of rows
+	 * already in the table stay.
+	 */
+	private void forget(List<Object[]> rows){
+		if(keys == null){
+			return;
+		}
+		for(Object[] row : rows){
+			keys.remove((String) row[2], (String) row[4]);
+		}
+	}
+
+	/**
+	 * What happened to the records written.
+	 */
+	public static class Result {
+		private int inserted;
+		private int updated;
+		private int skipped;
+
+		public int getInserted(){
+			return inserted;
+		}
+
+		public int getUpdated(){
+			return updated;
+		}
+
+		public int getSkipped(){
+			return skipped;
+		}
+
+		/**
+		 * Adds the counts of another write, such as the next file of a stream.
+		 */
+		public void add(Result other){
+			inserted += other.inserted;
+			updated += other.updated;
+			skipped += other.skipped;
+		}
+
+		@Override
+		public String toString(){
+			return "Rows inserted: " + inserted +
+					"\nRows updated: " + updated +
+					"\nRepeats skipped: " + skipped;
+		}
+	}
+}
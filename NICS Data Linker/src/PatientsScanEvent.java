@@ -0,0 +1,28 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for one pass over the Patients table.
+ */
+@Name("nics.PatientsScan")
+@Label("Patients Scan")
+@Category({"NICS Data Linker", "Database"})
+@Description("A pass over every row of the Patients table")
+public class PatientsScanEvent extends Event {
+
+	@Label("Purpose")
+	@Description("Why the table was read: key index, ACK reconciliation or report")
+	String purpose;
+
+	@Label("Rows Scanned")
+	int rowsScanned;
+
+	@Label("Rows Matched")
+	int rowsMatched;
+
+	@Label("Rows Updated")
+	int rowsUpdated;
+}
@@ -0,0 +1,244 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and timings for each stage of reading files and working on the
+ * Patients table, so a slow run can be pinned on the file reads, the message
+ * parsing, the table scan or the row writes. The counters are files and
+ * bytes read, messages parsed and rows scanned, matched and written.
+ *
+ * Metrics are off unless the <code>nics.metrics</code> system property is
+ * true or they are switched on through {@link #setEnabled(boolean)} or JMX.
+ * While off, every recording method returns after reading one volatile flag
+ * and no clock is read. The counters are registered with the platform MBean
+ * server as {@value #OBJECT_NAME}.
+ *
+ * Times are added up across threads, so when files are parsed in parallel
+ * the read and parse times can be longer than the run itself.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+	public static final String OBJECT_NAME = "nics.datalinker:type=PipelineMetrics";
+
+	private static volatile boolean active = Boolean.getBoolean("nics.metrics");
+	private static final PipelineMetrics INSTANCE = new PipelineMetrics();
+
+	private final AtomicLong files = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong messages = new AtomicLong();
+	private final AtomicLong rowsScanned = new AtomicLong();
+	private final AtomicLong rowsMatched = new AtomicLong();
+	private final AtomicLong rowsWritten = new AtomicLong();
+	private final AtomicLong readNanos = new AtomicLong();
+	private final AtomicLong parseNanos = new AtomicLong();
+	private final AtomicLong scanNanos = new AtomicLong();
+	private final AtomicLong writeNanos = new AtomicLong();
+
+	private PipelineMetrics(){
+	}
+
+	public static PipelineMetrics getInstance(){
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server. Calling it again does nothing.
+	 */
+	public static void register(){
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		}catch(InstanceAlreadyExistsException e){
+			// already registered
+		}catch(JMException e){
+			// the counters still work, they just cannot be watched
+		}
+	}
+
+	/**
+	 * @return true if metrics are being recorded
+	 */
+	static boolean active(){
+		return active;
+	}
+
+	/**
+	 * @return a start time for {@link #since(long)}, or 0 while metrics are off
+	 */
+	static long now(){
+		return active ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * @param start - a time from {@link #now()}
+	 * @return the nanoseconds since then, or 0 while metrics are off
+	 */
+	static long since(long start){
+		return active && start != 0 ? System.nanoTime() - start : 0;
+	}
+
+	/**
+	 * Records one file read and parsed.
+	 * @param size - the file's length in bytes
+	 * @param messageCount - the messages it held
+	 * @param read - nanoseconds spent reading and decoding the file
+	 * @param parse - nanoseconds spent splitting and parsing its messages
+	 */
+	static void fileParsed(long size, long messageCount, long read, long parse){
+		if(!active){
+			return;
+		}
+		INSTANCE.files.incrementAndGet();
+		INSTANCE.bytes.addAndGet(size);
+		INSTANCE.messages.addAndGet(messageCount);
+		INSTANCE.readNanos.addAndGet(read);
+		INSTANCE.parseNanos.addAndGet(parse);
+	}
+
+	/**
+	 * Records a pass over Patients rows, not counting time spent writing to them.
+	 * @param rows - rows read
+	 * @param matched - rows that matched what was being looked for
+	 * @param nanos - time spent
+	 */
+	static void scanned(long rows, long matched, long nanos){
+		if(!active){
+			return;
+		}
+		INSTANCE.rowsScanned.addAndGet(rows);
+		INSTANCE.rowsMatched.addAndGet(matched);
+		INSTANCE.scanNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Records rows added to or changed in Patients.
+	 * @param rows - rows written
+	 * @param nanos - time spent
+	 */
+	static void written(long rows, long nanos){
+		if(!active){
+			return;
+		}
+		INSTANCE.rowsWritten.addAndGet(rows);
+		INSTANCE.writeNanos.addAndGet(nanos);
+	}
+
+	@Override
+	public boolean isEnabled(){
+		return active;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled){
+		active = enabled;
+	}
+
+	@Override
+	public long getFilesRead(){
+		return files.get();
+	}
+
+	@Override
+	public long getBytesRead(){
+		return bytes.get();
+	}
+
+	@Override
+	public long getMessagesParsed(){
+		return messages.get();
+	}
+
+	@Override
+	public long getRowsScanned(){
+		return rowsScanned.get();
+	}
+
+	@Override
+	public long getRowsMatched(){
+		return rowsMatched.get();
+	}
+
+	@Override
+	public long getRowsWritten(){
+		return rowsWritten.get();
+	}
+
+	@Override
+	public double getReadMillis(){
+		return readNanos.get() / 1e6;
+	}
+
+	@Override
+	public double getParseMillis(){
+		return parseNanos.get() / 1e6;
+	}
+
+	@Override
+	public double getScanMillis(){
+		return scanNanos.get() / 1e6;
+	}
+
+	@Override
+	public double getWriteMillis(){
+		return writeNanos.get() / 1e6;
+	}
+
+	@Override
+	public String getSummary(){
+		return snapshot().toString();
+	}
+
+	@Override
+	public void reset(){
+		for(AtomicLong counter : new AtomicLong[]{files, bytes, messages, rowsScanned, rowsMatched, rowsWritten,
+				readNanos, parseNanos, scanNanos, writeNanos}){
+			counter.set(0);
+		}
+	}
+
+	/**
+	 * @return the counters as they are now, to compare with a later snapshot
+	 */
+	public Snapshot snapshot(){
+		return new Snapshot(files.get(), bytes.get(), messages.get(), rowsScanned.get(), rowsMatched.get(), rowsWritten.get(),
+				readNanos.get(), parseNanos.get(), scanNanos.get(), writeNanos.get());
+	}
+
+	/**
+	 * The counters at one moment. Subtracting an earlier snapshot gives what
+	 * a single run did without resetting the totals watched over JMX.
+	 */
+	public static class Snapshot {
+		private final long[] values;
+
+		private Snapshot(long... values){
+			this.values = values;
+		}
+
+		/**
+		 * @param earlier - a snapshot taken before this one
+		 * @return what was recorded between the two
+		 */
+		public Snapshot since(Snapshot earlier){
+			long[] difference = new long[values.length];
+			for(int i = 0; i < values.length; i++){
+				difference[i] = values[i] - earlier.values[i];
+			}
+			return new Snapshot(difference);
+		}
+
+		@Override
+		public String toString(){
+			return String.format("Files read: %d (%.1f KB), messages parsed: %d%n"
+					+ "Rows scanned: %d, matched: %d, written: %d%n"
+					+ "File read: %.1f ms, message parse: %.1f ms, Patients scan: %.1f ms, row writes: %.1f ms",
+					values[0], values[1] / 1024.0, values[2], values[3], values[4], values[5],
+					values[6] / 1e6, values[7] / 1e6, values[8] / 1e6, values[9] / 1e6);
+		}
+	}
+}
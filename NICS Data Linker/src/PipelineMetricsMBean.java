@@ -0,0 +1,35 @@
+/**
+ * Management interface of {@link PipelineMetrics}, so the counters can be
+ * watched and metrics switched on or off from JConsole or any other JMX
+ * client while the application runs.
+ */
+public interface PipelineMetricsMBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	long getFilesRead();
+
+	long getBytesRead();
+
+	long getMessagesParsed();
+
+	long getRowsScanned();
+
+	long getRowsMatched();
+
+	long getRowsWritten();
+
+	double getReadMillis();
+
+	double getParseMillis();
+
+	double getScanMillis();
+
+	double getWriteMillis();
+
+	String getSummary();
+
+	void reset();
+}
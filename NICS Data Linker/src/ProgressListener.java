@@ -0,0 +1,35 @@
+/**
+ * Receives row level progress from long running database and file work and
+ * lets that work know when the user has asked for it to stop. Work that is
+ * cancelled stops at the next safe point, so anything already written stays
+ * written.
+ */
+public interface ProgressListener {
+
+	/**
+	 * A listener that ignores progress and never cancels.
+	 */
+	ProgressListener NONE = new ProgressListener(){
+		@Override
+		public void progress(String stage, long done, long total){
+		}
+
+		@Override
+		public boolean isCancelRequested(){
+			return false;
+		}
+	};
+
+	/**
+	 * Reports how far the work has gotten.
+	 * @param stage - a short description of the current step, such as "Writing rows"
+	 * @param done - units of work finished in this step
+	 * @param total - units of work in this step, or -1 if unknown
+	 */
+	void progress(String stage, long done, long total);
+
+	/**
+	 * @return true once the work should stop at the next safe point
+	 */
+	boolean isCancelRequested();
+}
@@ -0,0 +1,74 @@
+import java.io.IOException;
+
+import com.healthmarketscience.jackcess.Column;
+import com.healthmarketscience.jackcess.Cursor;
+import com.healthmarketscience.jackcess.CursorBuilder;
+import com.healthmarketscience.jackcess.Table;
+
+/**
+ * Builds every report from a single scan of the Patients table. The column
+ * handles are resolved once before the scan and each row is read into a
+ * {@link PatientRecord} and sorted into its {@link PatientReport} group, so
+ * showing the acknowledged and non-acknowledged reports back to back only
+ * reads the table once.
+ */
+public class ReportEngine {
+
+	private static final int PROGRESS_INTERVAL = 1000;
+
+	/**
+	 * Scans the Patients table.
+	 * @param session - the open database session
+	 * @param listener - receives progress and may request cancellation
+	 * @return the classified rows, marked incomplete if the scan was cancelled
+	 * @throws IOException
+	 */
+	public PatientReport scan(DatabaseSession session, ProgressListener listener) throws IOException{
+		Table patientsTable = session.table("Patients");
+		Column idCol = session.column("Patients", "Patient_ID");
+		Column nameCol = session.column("Patients", "Patient_Name");
+		Column meditechCol = session.column("Patients", "Meditech_ID");
+		Column ackCol = session.column("Patients", "Acknowledged");
+		Column codeCol = session.column("Patients", "Admit_Update");
+		Column dateCol = session.column("Patients", "Date/Time");
+		Column resolvedCol = session.column("Patients", "Resolved");
+
+		PatientReport report = new PatientReport();
+		Cursor cur = CursorBuilder.createCursor(patientsTable);
+		int total = patientsTable.getRowCount();
+		int scanned = 0;
+		long start = PipelineMetrics.now();
+		while(cur.moveToNextRow()){
+			if(scanned % PROGRESS_INTERVAL == 0){
+				listener.progress("Reading rows", scanned, total);
+				if(listener.isCancelRequested()){
+					PipelineMetrics.scanned(scanned, 0, PipelineMetrics.since(start));
+					return report;
+				}
+			}
+			scanned++;
+			Object id = cur.getCurrentRowValue(idCol);
+			PatientRecord record = new PatientRecord(
+					(id instanceof Number) ? ((Number) id).intValue() : -1,
+					text(cur.getCurrentRowValue(nameCol)),
+					text(cur.getCurrentRowValue(meditechCol)),
+					text(cur.getCurrentRowValue(codeCol)),
+					text(cur.getCurrentRowValue(dateCol)));
+			if(String.valueOf(cur.getCurrentRowValue(ackCol)).contains("Yes")){
+				report.addAcknowledged(record);
+			}else if(String.valueOf(cur.getCurrentRowValue(resolvedCol)).contains("Yes")){
+				report.addResolved(record);
+			}else{
+				report.addUnresolved(record);
+			}
+		}
+		PipelineMetrics.scanned(scanned, 0, PipelineMetrics.since(start));
+		listener.progress("Reading rows", scanned, total);
+		report.setComplete(true);
+		return report;
+	}
+
+	private static String text(Object value){
+		return value == null ? "" : value.toString();
+	}
+}
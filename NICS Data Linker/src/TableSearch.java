@@ -0,0 +1,245 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.table.TableModel;
+import javax.swing.table.TableRowSorter;
+
+/**
+ * Search box logic for a report table. Keystrokes are collected until the
+ * user pauses, the query is compiled once, and the rows are matched on a
+ * background thread against lowercased copies of the cell text. Only the
+ * finished result is handed to the sorter, as a filter that looks rows up in
+ * a bit set, so the event dispatch thread never runs the match itself.
+ *
+ * A query matches a row when it is found in any of the row's cells, ignoring
+ * case, the same as the regex filter this replaces. Queries without regex
+ * metacharacters are matched as plain text and, once they are three
+ * characters long, only the rows a {@link TrigramIndex} offers are checked.
+ * The cell text and the index are built in the background as soon as the
+ * search is created. A plain query too short for the index that contains
+ * the previous plain query only checks the rows the previous query matched.
+ * Regexes check every row.
+ *
+ * The model must not change while it is being searched.
+ */
+public class TableSearch {
+
+	public static final int DEFAULT_DELAY_MILLIS = 150;
+
+	// how many rows are checked between looks at whether a newer query has arrived
+	private static final int CHECK_INTERVAL = 4096;
+
+	private final TableModel model;
+	private final TableRowSorter<TableModel> sorter;
+	private final Timer debounce;
+	private final ExecutorService worker;
+	private String query = "";
+	// bumped for every query so a search that has been overtaken can stop early
+	private volatile int generation;
+
+	// touched only on the worker thread
+	private String[][] rowText;
+	private TrigramIndex index;
+	private String lastLiteral;
+	private BitSet lastMatches;
+
+	/**
+	 * @param model - the table being searched
+	 * @param sorter - the sorter the search result is applied to
+	 */
+	public TableSearch(TableModel model, TableRowSorter<TableModel> sorter){
+		this(model, sorter, DEFAULT_DELAY_MILLIS);
+	}
+
+	/**
+	 * @param model - the table being searched
+	 * @param sorter - the sorter the search result is applied to
+	 * @param delayMillis - how long typing must pause before the search runs
+	 */
+	public TableSearch(TableModel model, TableRowSorter<TableModel> sorter, int delayMillis){
+		this.model = model;
+		this.sorter = sorter;
+		this.debounce = new Timer(delayMillis, new ActionListener(){
+			@Override
+			public void actionPerformed(ActionEvent e){
+				search(query);
+			}
+		});
+		this.debounce.setRepeats(false);
+		this.worker = Executors.newSingleThreadExecutor(new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "table-search");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.worker.execute(new Runnable(){
+			@Override
+			public void run(){
+				index = new TrigramIndex(rowText());
+			}
+		});
+	}
+
+	/**
+	 * Sets the query to search for once typing pauses. Must be called on the
+	 * event dispatch thread.
+	 * @param text - the text in the search box
+	 */
+	public void setQuery(String text){
+		query = text;
+		debounce.restart();
+	}
+
+	/**
+	 * Stops any pending or running search and the search thread.
+	 */
+	public void close(){
+		debounce.stop();
+		generation++;
+		worker.shutdownNow();
+	}
+
+	/**
+	 * Compiles the query and starts matching it in the background. An invalid
+	 * regex leaves the current filter in place.
+	 */
+	private void search(String text){
+		final int current = ++generation;
+		if(text.length() == 0){
+			sorter.setRowFilter(null);
+			return;
+		}
+		final String literal = isLiteral(text) ? text.toLowerCase(Locale.ROOT) : null;
+		final Pattern pattern;
+		if(literal == null){
+			try{
+				pattern = Pattern.compile(text, Pattern.CASE_INSENSITIVE);
+			}catch(PatternSyntaxException e){
+				return;
+			}
+		}else{
+			pattern = null;
+		}
+		worker.execute(new Runnable(){
+			@Override
+			public void run(){
+				final BitSet matches = match(literal, pattern, current);
+				if(matches == null){
+					return;
+				}
+				SwingUtilities.invokeLater(new Runnable(){
+					@Override
+					public void run(){
+						if(current == generation){
+							sorter.setRowFilter(new MatchFilter(matches));
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Finds the matching rows. Runs on the worker thread.
+	 * @return the matching model rows, or null if a newer query arrived first
+	 */
+	private BitSet match(String literal, Pattern pattern, int current){
+		String[][] rows = rowText();
+		BitSet matches = new BitSet(rows.length);
+		int[] candidates = literal != null && index != null ? index.candidates(literal) : null;
+		if(candidates != null){
+			for(int i = 0; i < candidates.length; i++){
+				if(matches(rows[candidates[i]], literal, null)){
+					matches.set(candidates[i]);
+				}
+			}
+			lastLiteral = literal;
+			lastMatches = matches;
+			return matches;
+		}
+		boolean narrowing = literal != null && lastLiteral != null && literal.contains(lastLiteral);
+		int checked = 0;
+		int row = narrowing ? lastMatches.nextSetBit(0) : 0;
+		while(row >= 0 && row < rows.length){
+			if(++checked % CHECK_INTERVAL == 0 && current != generation){
+				return null;
+			}
+			if(matches(rows[row], literal, pattern)){
+				matches.set(row);
+			}
+			row = narrowing ? lastMatches.nextSetBit(row + 1) : row + 1;
+		}
+		lastLiteral = literal;
+		lastMatches = matches;
+		return matches;
+	}
+
+	private static boolean matches(String[] cells, String literal, Pattern pattern){
+		for(int i = 0; i < cells.length; i++){
+			if(literal != null ? cells[i].contains(literal) : pattern.matcher(cells[i]).find()){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Lowercased cell text, made the first time it is needed. Runs on the
+	 * worker thread.
+	 */
+	private String[][] rowText(){
+		if(rowText == null){
+			int rows = model.getRowCount();
+			int columns = model.getColumnCount();
+			String[][] text = new String[rows][columns];
+			for(int row = 0; row < rows; row++){
+				for(int col = 0; col < columns; col++){
+					Object value = model.getValueAt(row, col);
+					text[row][col] = value == null ? "" : value.toString().toLowerCase(Locale.ROOT);
+				}
+			}
+			rowText = text;
+		}
+		return rowText;
+	}
+
+	/**
+	 * @return true if the query has no regex metacharacters, so it can be matched as plain text
+	 */
+	static boolean isLiteral(String text){
+		for(int i = 0; i < text.length(); i++){
+			if("\\^$.|?*+()[]{}".indexOf(text.charAt(i)) >= 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Shows the model rows set in a finished search result.
+	 */
+	private static class MatchFilter extends RowFilter<TableModel, Integer> {
+		private final BitSet matches;
+
+		MatchFilter(BitSet matches){
+			this.matches = matches;
+		}
+
+		@Override
+		public boolean include(Entry<? extends TableModel, ? extends Integer> entry){
+			return matches.get(entry.getIdentifier().intValue());
+		}
+	}
+}
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory trigram index over the cells of a report. Every run of three
+ * characters in a cell maps to the sorted list of rows containing it, so the
+ * rows that can contain a plain text query are found by intersecting the
+ * lists for the query's trigrams instead of scanning every row. The result is
+ * only a candidate list: a row holding all of the trigrams may still not hold
+ * the query itself, so callers check each candidate.
+ *
+ * Cell text is expected to be lowercased already, and queries must be too.
+ */
+public class TrigramIndex {
+
+	public static final int GRAM = 3;
+
+	private final Map<Long, int[]> postings;
+	private final int rowCount;
+
+	/**
+	 * Indexes every cell of every row.
+	 * @param rows - the cell text of each row
+	 */
+	public TrigramIndex(String[][] rows){
+		Map<Long, Postings> building = new HashMap<Long, Postings>();
+		for(int row = 0; row < rows.length; row++){
+			for(String cell : rows[row]){
+				for(int i = 0; i + GRAM <= cell.length(); i++){
+					Long key = Long.valueOf(key(cell, i));
+					Postings list = building.get(key);
+					if(list == null){
+						list = new Postings();
+						building.put(key, list);
+					}
+					list.add(row);
+				}
+			}
+		}
+		postings = new HashMap<Long, int[]>(building.size() * 2);
+		for(Map.Entry<Long, Postings> entry : building.entrySet()){
+			Postings list = entry.getValue();
+			postings.put(entry.getKey(), Arrays.copyOf(list.rows, list.size));
+		}
+		rowCount = rows.length;
+	}
+
+	/**
+	 * @return the number of rows indexed
+	 */
+	public int getRowCount(){
+		return rowCount;
+	}
+
+	/**
+	 * @return the number of distinct trigrams
+	 */
+	public int getTrigramCount(){
+		return postings.size();
+	}
+
+	/**
+	 * Returns the rows that contain every trigram of the query, in row order.
+	 * @param query - lowercased plain text
+	 * @return the candidate rows, or null if the query is too short to use the index
+	 */
+	public int[] candidates(String query){
+		if(query.length() < GRAM){
+			return null;
+		}
+		int count = query.length() - GRAM + 1;
+		int[][] lists = new int[count][];
+		for(int i = 0; i < count; i++){
+			int[] list = postings.get(Long.valueOf(key(query, i)));
+			if(list == null){
+				return new int[0];
+			}
+			lists[i] = list;
+		}
+		// start from the shortest list so the work is bounded by the rarest trigram
+		Arrays.sort(lists, new Comparator<int[]>(){
+			@Override
+			public int compare(int[] a, int[] b){
+				return a.length < b.length ? -1 : (a.length == b.length ? 0 : 1);
+			}
+		});
+		int[] result = lists[0];
+		for(int i = 1; i < lists.length && result.length > 0; i++){
+			if(lists[i] != lists[i - 1]){
+				result = intersect(result, lists[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Intersects a short sorted list with a longer one, galloping through the
+	 * longer list.
+	 */
+	private static int[] intersect(int[] small, int[] large){
+		int[] out = new int[small.length];
+		int size = 0;
+		int from = 0;
+		for(int i = 0; i < small.length && from < large.length; i++){
+			int target = small[i];
+			int step = 1;
+			int hi = from;
+			while(hi < large.length && large[hi] < target){
+				from = hi + 1;
+				hi += step;
+				step <<= 1;
+			}
+			int found = Arrays.binarySearch(large, from, Math.min(hi + 1, large.length), target);
+			if(found >= 0){
+				out[size++] = target;
+				from = found + 1;
+			}else{
+				from = -found - 1;
+			}
+		}
+		return Arrays.copyOf(out, size);
+	}
+
+	private static long key(String text, int at){
+		return ((long) text.charAt(at) << 32) | ((long) text.charAt(at + 1) << 16) | text.charAt(at + 2);
+	}
+
+	/**
+	 * Growable list of rows for one trigram while the index is built.
+	 */
+	private static class Postings {
+		int[] rows = new int[4];
+		int size;
+
+		void add(int row){
+			// rows arrive in order, so a repeat can only be the last one added
+			if(size > 0 && rows[size - 1] == row){
+				return;
+			}
+			if(size == rows.length){
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+			rows[size++] = row;
+		}
+	}
+}
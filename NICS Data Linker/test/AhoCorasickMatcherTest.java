@@ -0,0 +1,151 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link AhoCorasickMatcher} against the loop it replaced, which asked
+ * every ACK ID in turn whether a Patients row's Meditech ID contained it, on
+ * the same rows and IDs. The IDs include ones that are substrings of other
+ * IDs and ones that overlap, since those are the rows a wrong failure link
+ * would answer differently.
+ */
+public class AhoCorasickMatcherTest {
+
+	@Test
+	public void nestedAndOverlappingIds(){
+		List<String> ids = Arrays.asList("V1234", "V123", "1234", "23", "V12345", "ABA", "BAB", "AA", "AAA", "V123");
+		List<String> rows = Arrays.asList("V1234", "V123", "V12", "X1234X", "V12345", "V1235", "ABAB", "BABA", "AB",
+				"A", "AA", "BAAAB", "123", "2", "", "V9999", "xV123x", "V12V123");
+		assertSameAsContains(ids, rows);
+	}
+
+	@Test
+	public void randomIdsOverSmallAlphabet(){
+		// a two or three letter alphabet makes nested and overlapping IDs common
+		Random random = new Random(4);
+		for(int round = 0; round < 200; round++){
+			String alphabet = round % 2 == 0 ? "AB" : "AB1";
+			List<String> ids = new ArrayList<String>();
+			for(int i = 0, n = 1 + random.nextInt(12); i < n; i++){
+				ids.add(randomText(random, alphabet, 1, 5));
+			}
+			List<String> rows = new ArrayList<String>();
+			for(int i = 0; i < 50; i++){
+				rows.add(randomText(random, alphabet, 0, 16));
+			}
+			assertSameAsContains(ids, rows);
+		}
+	}
+
+	@Test
+	public void meditechStyleIds(){
+		Random random = new Random(5);
+		List<String> ids = new ArrayList<String>();
+		List<String> rows = new ArrayList<String>();
+		for(int i = 0; i < 500; i++){
+			String id = "V" + (1000 + random.nextInt(9000));
+			rows.add(id + (random.nextBoolean() ? "" : "-" + random.nextInt(10)));
+			if(random.nextInt(3) == 0){
+				ids.add(id);
+			}
+			if(random.nextInt(10) == 0){
+				// a shorter ID inside some of the row IDs
+				ids.add(id.substring(0, 3));
+			}
+		}
+		assertSameAsContains(ids, rows);
+	}
+
+	@Test
+	public void emptyIdMatchesEveryRow(){
+		AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("V1", ""));
+		assertTrue(matcher.matches(""));
+		assertTrue(matcher.matches("X"));
+		BitSet found = new BitSet();
+		assertTrue(matcher.findAll("X", found));
+		BitSet expected = new BitSet();
+		expected.set(1);
+		assertEquals(expected, found);
+	}
+
+	@Test
+	public void noIdsMatchNothing(){
+		AhoCorasickMatcher matcher = new AhoCorasickMatcher(Collections.<String>emptyList());
+		assertEquals(0, matcher.getPatternCount());
+		assertFalse(matcher.matches("V1234"));
+		assertFalse(matcher.findAll("V1234", new BitSet()));
+	}
+
+	@Test
+	public void findAllGathersAcrossRows(){
+		List<String> ids = Arrays.asList("V12", "V1234", "34", "V9");
+		AhoCorasickMatcher matcher = new AhoCorasickMatcher(ids);
+		BitSet found = new BitSet();
+		matcher.findAll("V1234", found);
+		matcher.findAll("V5", found);
+		matcher.findAll("V98", found);
+		BitSet expected = new BitSet();
+		expected.set(0, 4);
+		assertEquals(expected, found);
+	}
+
+	/**
+	 * Checks every row with {@link AhoCorasickMatcher#matches(CharSequence)} and
+	 * {@link AhoCorasickMatcher#findAll(CharSequence, BitSet)} against the
+	 * contains loop.
+	 */
+	private static void assertSameAsContains(List<String> ids, List<String> rows){
+		AhoCorasickMatcher matcher = new AhoCorasickMatcher(ids);
+		assertEquals(ids.size(), matcher.getPatternCount());
+		for(String row : rows){
+			String message = row + " against " + ids;
+			assertEquals(message, containsAny(row, ids), matcher.matches(row));
+			BitSet found = new BitSet();
+			assertEquals(message, containsAny(row, ids), matcher.findAll(row, found));
+			assertEquals(message, containedIds(row, ids), found);
+		}
+	}
+
+	/**
+	 * The check as it was written before the matcher.
+	 */
+	private static boolean containsAny(String meditechId, List<String> ackData){
+		for(String ack : ackData){
+			if(meditechId.contains(ack)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The bits findAll should set: one per ID the row contains, with a
+	 * duplicate ID sharing the bit of its first copy.
+	 */
+	private static BitSet containedIds(String meditechId, List<String> ackData){
+		BitSet expected = new BitSet();
+		for(int i = 0; i < ackData.size(); i++){
+			if(meditechId.contains(ackData.get(i))){
+				expected.set(ackData.indexOf(ackData.get(i)));
+			}
+		}
+		return expected;
+	}
+
+	private static String randomText(Random random, String alphabet, int min, int max){
+		StringBuilder text = new StringBuilder();
+		for(int i = 0, n = min + random.nextInt(max - min + 1); i < n; i++){
+			text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,155 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link HL7Tokenizer} against the regular expression splitting that
+ * {@link FileReader} used before it, on the same well formed NICS, ACK and
+ * NACK messages, and pins down the malformed cases where the two differ.
+ */
+public class HL7TokenizerTest {
+
+	private static final String[] CODES = {"A01", "A02", "A03", "A04", "A08", "A11"};
+	private static final String[] NAME_PARTS = {"SMITH", "O'BRIEN", "VAN DER BERG", "MARY ANN", "JR", "", " LEE "};
+
+	@Test
+	public void nicsMessagesMatchTheSplit(){
+		Random random = new Random(1);
+		HL7Tokenizer tokenizer = new HL7Tokenizer();
+		for(int i = 0; i < 2000; i++){
+			String message = CorpusGenerator.nicsMessage(meditechId(random), name(random), CODES[random.nextInt(CODES.length)]);
+			String[] expected = splitNics(message);
+			assertTrue(tokenizer.reset(message));
+			assertTrue(tokenizer.contains("ADT^"));
+			assertEquals(message, expected[0], tokenizer.meditechId());
+			assertEquals(message, expected[1], tokenizer.patientName());
+			assertEquals(message, expected[2], tokenizer.eventCode());
+		}
+	}
+
+	@Test
+	public void ackAndNackMessagesMatchTheSplit(){
+		Random random = new Random(2);
+		HL7Tokenizer tokenizer = new HL7Tokenizer();
+		for(int i = 0; i < 2000; i++){
+			String id = meditechId(random);
+			String ack = CorpusGenerator.ackMessage(id);
+			assertTrue(tokenizer.reset(ack));
+			assertFalse(tokenizer.contains("ERR"));
+			assertTrue(tokenizer.contains("ACK^"));
+			assertEquals(ack, splitAck(ack), tokenizer.meditechId());
+
+			String nack = CorpusGenerator.nackMessage(id);
+			assertTrue(tokenizer.reset(nack));
+			assertTrue(tokenizer.contains("ERR"));
+			assertEquals(nack, splitNack(nack), tokenizer.nackId());
+		}
+	}
+
+	@Test
+	public void bodyEndsAtTheNextControlId(){
+		String message = CorpusGenerator.nicsMessage("V0001", "DOE^JOHN", "A04")
+				+ CorpusGenerator.nicsMessage("V0002", "ROE^JANE", "A08");
+		String[] expected = splitNics(message);
+		HL7Tokenizer tokenizer = new HL7Tokenizer();
+		assertTrue(tokenizer.reset(message));
+		assertEquals(expected[0], tokenizer.meditechId());
+		assertEquals(expected[1], tokenizer.patientName());
+		assertEquals(expected[2], tokenizer.eventCode());
+	}
+
+	@Test
+	public void tokenizerIsReusable(){
+		HL7Tokenizer tokenizer = new HL7Tokenizer();
+		tokenizer.reset(CorpusGenerator.nicsMessage("V0001", "DOE^JOHN", "A04"));
+		assertEquals("DOE JOHN", tokenizer.patientName());
+		tokenizer.reset(CorpusGenerator.nicsMessage("V0002", "ROE^JANE", "A08"));
+		assertEquals("V0002", tokenizer.meditechId());
+		assertEquals("ROE JANE", tokenizer.patientName());
+		assertEquals("A08", tokenizer.eventCode());
+	}
+
+	@Test
+	public void controlIdPrefixIsMatchedLiterally(){
+		// the pattern read each '.' as any character, so this split as a control ID
+		String message = "MSH|^~\\&|MEDITECH|GGH|NICS|NYS|20130820||ADT^A04|CS-ADTx1xV0001|T|2.3";
+		assertEquals(2, message.split("CS-ADT.1.").length);
+		HL7Tokenizer tokenizer = new HL7Tokenizer();
+		assertFalse(tokenizer.reset(message));
+		assertNull(tokenizer.meditechId());
+		assertNull(tokenizer.patientName());
+		assertNull(tokenizer.eventCode());
+	}
+
+	@Test
+	public void emptyTrailingNameIsEmpty(){
+		String message = "MSH|^~\\&|MEDITECH|GGH|NICS|NYS|20130820||ADT^A04|CS-ADT.1.V0001|T|2.3||||AL|NE\r"
+				+ "EVN|A04|20130820\rPID|1||V0001||";
+		try{
+			splitNics(message);
+			throw new AssertionError("the split should have run off the end of the fields");
+		}catch(ArrayIndexOutOfBoundsException e){
+			// the trailing empty field was dropped
+		}
+		HL7Tokenizer tokenizer = new HL7Tokenizer();
+		assertTrue(tokenizer.reset(message));
+		assertEquals("", tokenizer.patientName());
+	}
+
+	@Test
+	public void missingValuesAreNull(){
+		HL7Tokenizer tokenizer = new HL7Tokenizer();
+		assertFalse(tokenizer.reset("MSH|^~\\&|MEDITECH|GGH|NICS|NYS|20130820||ADT^A04|V0001|T|2.3"));
+		assertNull(tokenizer.nackId());
+		assertTrue(tokenizer.reset("MSH|^~\\&|MEDITECH|GGH|NICS|NYS|20130820||ADT^A04|CS-ADT.1.V0001|T|2.3"));
+		assertEquals("V0001", tokenizer.meditechId());
+		assertNull(tokenizer.patientName());
+		assertTrue(tokenizer.reset("MSH|^~\\&|MEDITECH|GGH|NICS|NYS|20130820||A04|CS-ADT.1.V0001|T|2.3"));
+		assertNull(tokenizer.eventCode());
+	}
+
+	/**
+	 * The NICS extraction as it was written before the tokenizer.
+	 * @return the Meditech ID, name and event code
+	 */
+	private static String[] splitNics(String message){
+		String[] array = message.split("CS-ADT.1.");
+		String[] array2 = array[1].split("\\|T\\|");
+		String[] array3 = array[1].split("\\|");
+		String[] array4 = array[0].split("ADT\\^");
+		return new String[]{array2[0].trim(), array3[14].replace('^', ' ').trim(), array4[1].replace('|', ' ').trim()};
+	}
+
+	private static String splitAck(String message){
+		String[] array = message.split("CS-ADT.1.");
+		return array[1].split("\\|T\\|")[0].trim();
+	}
+
+	private static String splitNack(String message){
+		String[] array = message.split("CS-ADT.1.");
+		return array[1].split("ERR")[0].trim();
+	}
+
+	private static String meditechId(Random random){
+		StringBuilder id = new StringBuilder();
+		id.append((char)('A' + random.nextInt(26)));
+		for(int i = 0; i < 4 + random.nextInt(8); i++){
+			id.append((char)('0' + random.nextInt(10)));
+		}
+		return id.toString();
+	}
+
+	private static String name(Random random){
+		StringBuilder name = new StringBuilder(NAME_PARTS[random.nextInt(NAME_PARTS.length - 2)]);
+		int parts = 1 + random.nextInt(3);
+		for(int i = 0; i < parts; i++){
+			name.append('^').append(NAME_PARTS[random.nextInt(NAME_PARTS.length)]);
+		}
+		return name.toString();
+	}
+}
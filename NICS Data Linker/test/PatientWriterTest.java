@@ -0,0 +1,103 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.healthmarketscience.jackcess.Database;
+import com.healthmarketscience.jackcess.DatabaseBuilder;
+import com.healthmarketscience.jackcess.Row;
+import com.healthmarketscience.jackcess.Table;
+
+/**
+ * Checks that {@link PatientWriter} leaves its {@link PatientKeyIndex} true to
+ * the Patients table when a batch is not written.
+ */
+public class PatientWriterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Database db;
+	private Table patients;
+	private PatientKeyIndex keys;
+	private String existingId;
+	private String existingCode;
+
+	@Before
+	public void createTable() throws IOException{
+		File file = folder.newFile("Patients.accdb");
+		new CorpusGenerator(7).createDatabase(file, 20);
+		db = DatabaseBuilder.open(file);
+		patients = db.getTable("Patients");
+		keys = PatientKeyIndex.load(patients);
+		Row first = patients.getNextRow();
+		existingId = (String) first.get("Meditech_ID");
+		existingCode = (String) first.get("Admit_Update");
+	}
+
+	@After
+	public void close() throws IOException{
+		db.close();
+	}
+
+	@Test
+	public void cancelledAppendKeepsKeysAlreadyInTheTable() throws IOException{
+		ArrayList<String> nicsData = new ArrayList<String>(Arrays.asList(
+				existingId, "REPEAT^PATIENT", existingCode,
+				"NEW0001", "NEW^PATIENT", "A04"));
+		PatientWriter writer = new PatientWriter(patients, null, keys);
+		writer.write(nicsData, PatientWriter.Mode.APPEND, 10, new ProgressListener(){
+			@Override
+			public void progress(String stage, long done, long total){
+			}
+
+			@Override
+			public boolean isCancelRequested(){
+				return true;
+			}
+		});
+		assertEquals(20, patients.getRowCount());
+		assertTrue(keys.contains(existingId, existingCode));
+		assertFalse(keys.contains("NEW0001", "A04"));
+	}
+
+	@Test
+	public void skipAfterACancelledAppendDoesNotDuplicate() throws IOException{
+		ArrayList<String> nicsData = new ArrayList<String>(Arrays.asList(existingId, "REPEAT^PATIENT", existingCode));
+		PatientWriter writer = new PatientWriter(patients, null, keys);
+		writer.write(nicsData, PatientWriter.Mode.APPEND, 10, new ProgressListener(){
+			@Override
+			public void progress(String stage, long done, long total){
+			}
+
+			@Override
+			public boolean isCancelRequested(){
+				return true;
+			}
+		});
+		PatientWriter.Result result = writer.write(nicsData, PatientWriter.Mode.SKIP, 10, ProgressListener.NONE);
+		assertEquals(0, result.getInserted());
+		assertEquals(1, result.getSkipped());
+		assertEquals(20, patients.getRowCount());
+	}
+
+	@Test
+	public void writtenRowsAreInTheIndex() throws IOException{
+		ArrayList<String> nicsData = new ArrayList<String>(Arrays.asList("NEW0001", "NEW^PATIENT", "A04"));
+		PatientWriter writer = new PatientWriter(patients, null, keys);
+		PatientWriter.Result result = writer.write(nicsData, PatientWriter.Mode.SKIP, 10, ProgressListener.NONE);
+		assertEquals(1, result.getInserted());
+		assertEquals(21, patients.getRowCount());
+		assertTrue(keys.contains("NEW0001", "A04"));
+	}
+}
@@ -0,0 +1,123 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link TrigramIndex} never loses a row: the candidates it offers
+ * for a query, once each is checked with {@link String#contains(CharSequence)},
+ * must be exactly the rows a scan of every cell finds.
+ */
+public class TrigramIndexTest {
+
+	@Test
+	public void candidatesFindEveryRowTheScanFinds(){
+		// a small alphabet makes shared and repeated trigrams common
+		Random random = new Random(6);
+		for(int round = 0; round < 50; round++){
+			String[][] rows = new String[200][];
+			for(int row = 0; row < rows.length; row++){
+				rows[row] = new String[1 + random.nextInt(4)];
+				for(int cell = 0; cell < rows[row].length; cell++){
+					rows[row][cell] = randomText(random, "ab1 ", 0, 12);
+				}
+			}
+			TrigramIndex index = new TrigramIndex(rows);
+			for(int q = 0; q < 100; q++){
+				String query = randomText(random, "ab1 ", 3, 6);
+				assertEquals(query, scan(rows, query), checked(rows, index.candidates(query), query));
+			}
+		}
+	}
+
+	@Test
+	public void reportStyleCells(){
+		String[][] rows = {
+				{"v1234", "smith john", "a04", "yes"},
+				{"v12345", "smithers anne", "a08", "no"},
+				{"v9912", "o'brien mary ann", "a01", ""},
+				{"v1234-2", "lee", "a04", "no"},
+				{"", "", "", ""},
+		};
+		TrigramIndex index = new TrigramIndex(rows);
+		for(String query : new String[]{"v1234", "smith", "mith", "a04", "ann", "anne", "ee ", "xyz", "234", "brien mary"}){
+			assertEquals(query, scan(rows, query), checked(rows, index.candidates(query), query));
+		}
+	}
+
+	@Test
+	public void queryAcrossCellsIsNotFound(){
+		String[][] rows = {{"ab", "cd"}, {"abcd"}};
+		TrigramIndex index = new TrigramIndex(rows);
+		assertArrayEquals(new int[]{1}, index.candidates("bcd"));
+	}
+
+	@Test
+	public void repeatedTrigramsInTheQuery(){
+		String[][] rows = {{"aaa"}, {"aaaa"}, {"aaaaa"}, {"baaab"}};
+		TrigramIndex index = new TrigramIndex(rows);
+		assertEquals(Arrays.asList(Integer.valueOf(1), Integer.valueOf(2)), checked(rows, index.candidates("aaaa"), "aaaa"));
+		assertEquals(scan(rows, "aaa"), checked(rows, index.candidates("aaa"), "aaa"));
+	}
+
+	@Test
+	public void shortQueriesAreLeftToTheCaller(){
+		TrigramIndex index = new TrigramIndex(new String[][]{{"abc"}});
+		assertNull(index.candidates(""));
+		assertNull(index.candidates("ab"));
+		assertArrayEquals(new int[0], index.candidates("xyz"));
+	}
+
+	/**
+	 * The rows found by looking in every cell of every row.
+	 */
+	private static List<Integer> scan(String[][] rows, String query){
+		List<Integer> found = new ArrayList<Integer>();
+		for(int row = 0; row < rows.length; row++){
+			if(contains(rows[row], query)){
+				found.add(Integer.valueOf(row));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * The candidate rows that really hold the query, checking that the
+	 * candidates come in row order.
+	 */
+	private static List<Integer> checked(String[][] rows, int[] candidates, String query){
+		List<Integer> found = new ArrayList<Integer>();
+		for(int i = 0; i < candidates.length; i++){
+			if(i > 0 && candidates[i] <= candidates[i - 1]){
+				throw new AssertionError("candidates out of order: " + Arrays.toString(candidates));
+			}
+			if(contains(rows[candidates[i]], query)){
+				found.add(Integer.valueOf(candidates[i]));
+			}
+		}
+		return found;
+	}
+
+	private static boolean contains(String[] cells, String query){
+		for(String cell : cells){
+			if(cell.contains(query)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String randomText(Random random, String alphabet, int min, int max){
+		StringBuilder text = new StringBuilder();
+		for(int i = 0, n = min + random.nextInt(max - min + 1); i < n; i++){
+			text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,65 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import nicsbench.Workload;
+
+/**
+ * Connects the benchmarks to the application classes in the default package.
+ */
+public class Workloads implements Workload {
+
+	private final FileReader reader = new FileReader();
+	private final CorpusGenerator generator = new CorpusGenerator(1);
+
+	@Override
+	public void writeMessages(File file, String type, int messages) throws IOException{
+		generator.writeMessages(file, MessageType.valueOf(type), 0, messages);
+	}
+
+	@Override
+	public ArrayList<String> readFile(String path) throws IOException{
+		return reader.readFile(new String[]{path});
+	}
+
+	@Override
+	public ArrayList<String> messages(String path) throws IOException{
+		ArrayList<String> messages = new ArrayList<String>();
+		HL7MessageReader in = reader.openMessages(path);
+		try{
+			while(in.hasNext()){
+				messages.add(in.next());
+			}
+		}finally{
+			in.close();
+		}
+		return messages;
+	}
+
+	@Override
+	public ArrayList<String> getNicsData(ArrayList<String> messages){
+		return reader.getNicsData(messages);
+	}
+
+	@Override
+	public ArrayList<String> getAckData(ArrayList<String> messages){
+		return reader.getAckData(messages);
+	}
+
+	@Override
+	public ArrayList<String> getNackData(ArrayList<String> messages){
+		return reader.getNackData(messages);
+	}
+
+	@Override
+	public AckMatcher ackMatcher(Collection<String> ackIds){
+		final AckReconciler reconciler = new AckReconciler(ackIds);
+		return new AckMatcher(){
+			@Override
+			public boolean matches(String meditechId){
+				return reconciler.matches(meditechId);
+			}
+		};
+	}
+}
@@ -0,0 +1,90 @@
+package nicsbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The row matching inside AccessController.setAcknowledgements: every
+ * Patients Meditech ID checked against the loaded ACK IDs. The table itself
+ * is left out so the numbers show the matching cost alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AckMatchingBenchmark {
+
+	/** Patients rows scanned */
+	@Param({"50000"})
+	public int rows;
+
+	/** ACK IDs loaded */
+	@Param({"10", "1000", "100000"})
+	public int acks;
+
+	private String[] meditechIds;
+	private List<String> ackIds;
+	private Workload.AckMatcher matcher;
+
+	@Setup(Level.Trial)
+	public void makeIds(){
+		Workload workload = Workload.load();
+		meditechIds = new String[rows];
+		for(int i = 0; i < rows; i++){
+			meditechIds[i] = String.format("GGM%06dX", i);
+		}
+		// about half of the ACKs match a row
+		Random random = new Random(42);
+		ackIds = new ArrayList<String>(acks);
+		for(int i = 0; i < acks; i++){
+			ackIds.add(String.format("M%06d", random.nextInt(rows * 2)));
+		}
+		matcher = workload.ackMatcher(ackIds);
+	}
+
+	/**
+	 * Checks every row against ACK IDs compiled before the run.
+	 */
+	@Benchmark
+	public int matchRows(){
+		int matched = 0;
+		for(String id : meditechIds){
+			if(matcher.matches(id)){
+				matched++;
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * Compiles the ACK IDs and checks every row, as one ACK run does.
+	 */
+	@Benchmark
+	public int compileAndMatch(){
+		Workload.AckMatcher fresh = Workload.load().ackMatcher(ackIds);
+		int matched = 0;
+		for(String id : meditechIds){
+			if(fresh.matches(id)){
+				matched++;
+			}
+		}
+		return matched;
+	}
+}
@@ -0,0 +1,90 @@
+package nicsbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FileReader throughput on synthetic NICS, ACK and NACK files. readFile is
+ * measured from disk; the extraction methods are measured on messages that
+ * are already in memory so only the parsing is timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+
+	/** messages per file */
+	@Param({"100", "10000", "100000"})
+	public int messages;
+
+	private Workload workload;
+	private File dir;
+	private String nicsPath;
+	private ArrayList<String> nicsMessages;
+	private ArrayList<String> ackMessages;
+	private ArrayList<String> nackMessages;
+
+	@Setup(Level.Trial)
+	public void writeFiles() throws IOException{
+		workload = Workload.load();
+		dir = Files.createTempDirectory("nics-bench").toFile();
+		File nics = new File(dir, "nics.hl7");
+		File acks = new File(dir, "acks.hl7");
+		File nacks = new File(dir, "nacks.hl7");
+		workload.writeMessages(nics, "NICS", messages);
+		workload.writeMessages(acks, "ACK", messages);
+		workload.writeMessages(nacks, "NACK", messages);
+		nicsPath = nics.getPath();
+		nicsMessages = workload.messages(nicsPath);
+		ackMessages = workload.messages(acks.getPath());
+		nackMessages = workload.messages(nacks.getPath());
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles(){
+		for(File f : dir.listFiles()){
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	@Benchmark
+	public ArrayList<String> readFile() throws IOException{
+		return workload.readFile(nicsPath);
+	}
+
+	@Benchmark
+	public ArrayList<String> getNicsData(){
+		return workload.getNicsData(nicsMessages);
+	}
+
+	@Benchmark
+	public ArrayList<String> getAckData(){
+		return workload.getAckData(ackMessages);
+	}
+
+	@Benchmark
+	public ArrayList<String> getNackData(){
+		return workload.getNackData(nackMessages);
+	}
+}
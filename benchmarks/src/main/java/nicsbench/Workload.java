@@ -0,0 +1,64 @@
+package nicsbench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * The application code exercised by the benchmarks. The application classes
+ * live in the default package, which JMH does not allow a benchmark class to
+ * be in and which a named package cannot import, so {@link #load()} finds the
+ * default package implementation by name and the benchmarks call through
+ * this interface. Each call site only ever sees that one implementation, so
+ * the JIT inlines the calls.
+ */
+public interface Workload {
+
+	/**
+	 * @return the implementation in the default package
+	 */
+	static Workload load(){
+		try{
+			return (Workload) Class.forName("Workloads").getDeclaredConstructor().newInstance();
+		}catch(ReflectiveOperationException e){
+			throw new IllegalStateException("The Workloads class is missing from the benchmark jar", e);
+		}
+	}
+
+	/**
+	 * Writes a synthetic HL7 file of one message type.
+	 * @param file - where to write it
+	 * @param type - NICS, ACK or NACK
+	 * @param messages - how many messages to write
+	 */
+	void writeMessages(File file, String type, int messages) throws IOException;
+
+	/** FileReader.readFile on one file */
+	ArrayList<String> readFile(String path) throws IOException;
+
+	/** the messages in a file, as HL7MessageReader splits them */
+	ArrayList<String> messages(String path) throws IOException;
+
+	/** FileReader.getNicsData */
+	ArrayList<String> getNicsData(ArrayList<String> messages);
+
+	/** FileReader.getAckData */
+	ArrayList<String> getAckData(ArrayList<String> messages);
+
+	/** FileReader.getNackData */
+	ArrayList<String> getNackData(ArrayList<String> messages);
+
+	/**
+	 * Compiles ACK IDs the way AccessController.setAcknowledgements does.
+	 * @return the matcher its Patients scan checks every row with
+	 */
+	AckMatcher ackMatcher(Collection<String> ackIds);
+
+	/**
+	 * Row matching as done by AccessController.setAcknowledgements.
+	 */
+	interface AckMatcher {
+		boolean matches(String meditechId);
+	}
+}